@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static com.example.android.sunshine.common.utilities.SunshineDateUtils.DAY_IN_MILLIS;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class TestForecastCodec {
+
+    /* Temperatures are sent in tenths of a degree */
+    private static final double TEMPERATURE_DELTA = 0.05;
+
+    private static final long FIRST_DATE = TestUtilities.DATE_NORMALIZED;
+
+    /**
+     * Makes sure every day comes back on its own date, also when days are missing in between.
+     */
+    @Test
+    public void testRoundTripWithGapsBetweenDays() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.addDay(FIRST_DATE, 800, 10, 20, 0, 0, 0, 0);
+        forecast.addDay(FIRST_DATE + DAY_IN_MILLIS, 500, 11, 21, 0, 0, 0, 0);
+        forecast.addDay(FIRST_DATE + 4 * DAY_IN_MILLIS, 600, 12, 22, 0, 0, 0, 0);
+
+        ForecastBatch decoded = ForecastCodec.decode(ForecastCodec.encode(forecast, 0));
+
+        assertEquals(3, decoded.size());
+        for (int day = 0; day < forecast.size(); day++) {
+            assertEquals("Wrong date of day " + day, forecast.getDate(day), decoded.getDate(day));
+            assertEquals(forecast.getWeatherId(day), decoded.getWeatherId(day));
+            assertEquals(forecast.getMinTemp(day), decoded.getMinTemp(day), TEMPERATURE_DELTA);
+            assertEquals(forecast.getMaxTemp(day), decoded.getMaxTemp(day), TEMPERATURE_DELTA);
+        }
+    }
+
+    /**
+     * Makes sure only the days from the given one on are encoded.
+     */
+    @Test
+    public void testEncodesFromFirstDay() {
+        ForecastBatch forecast = createForecast(5);
+
+        ForecastBatch decoded = ForecastCodec.decode(ForecastCodec.encode(forecast, 2));
+
+        assertEquals(3, decoded.size());
+        assertEquals(forecast.getDate(2), decoded.getDate(0));
+        assertEquals(forecast.getDate(4), decoded.getDate(2));
+    }
+
+    /**
+     * Makes sure negative and fractional temperatures survive to a tenth of a degree, and that
+     * temperatures that don't fit into a short are clamped instead of wrapping around.
+     */
+    @Test
+    public void testTemperatures() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.addDay(FIRST_DATE, 600, -12.34, 0.26, 0, 0, 0, 0);
+        forecast.addDay(FIRST_DATE + DAY_IN_MILLIS, 800, -5000, 5000, 0, 0, 0, 0);
+
+        ForecastBatch decoded = ForecastCodec.decode(ForecastCodec.encode(forecast, 0));
+
+        assertEquals(-12.3, decoded.getMinTemp(0), 0.001);
+        assertEquals(0.3, decoded.getMaxTemp(0), 0.001);
+        assertEquals(Short.MIN_VALUE / 10d, decoded.getMinTemp(1), 0.001);
+        assertEquals(Short.MAX_VALUE / 10d, decoded.getMaxTemp(1), 0.001);
+    }
+
+    /**
+     * Makes sure a forecast with more days than fit into the count byte is cut off, not wrapped.
+     */
+    @Test
+    public void testDayCountIsCapped() {
+        ForecastBatch forecast = createForecast(300);
+
+        ForecastBatch decoded = ForecastCodec.decode(ForecastCodec.encode(forecast, 0));
+
+        assertEquals(255, decoded.size());
+        assertEquals(forecast.getDate(254), decoded.getDate(254));
+    }
+
+    /**
+     * Makes sure days that go back in time are refused instead of being sent with wrong dates.
+     */
+    @Test
+    public void testOutOfOrderDaysAreRejected() {
+        ForecastBatch forecast = new ForecastBatch();
+        forecast.addDay(FIRST_DATE + DAY_IN_MILLIS, 800, 10, 20, 0, 0, 0, 0);
+        forecast.addDay(FIRST_DATE, 800, 10, 20, 0, 0, 0, 0);
+
+        try {
+            ForecastCodec.encode(forecast, 0);
+            fail("Days out of order were encoded");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Makes sure the watch refuses bytes it doesn't understand rather than showing garbage.
+     */
+    @Test
+    public void testWrongVersionAndTruncatedInputAreRejected() {
+        byte[] encoded = ForecastCodec.encode(createForecast(3), 0);
+
+        byte[] wrongVersion = Arrays.copyOf(encoded, encoded.length);
+        wrongVersion[0]++;
+        assertRejected("A forecast of an unknown version was decoded", wrongVersion);
+
+        assertRejected("A truncated forecast was decoded",
+                Arrays.copyOf(encoded, encoded.length - 1));
+        assertRejected("A truncated header was decoded", Arrays.copyOf(encoded, 4));
+        assertRejected("An empty forecast was decoded", new byte[0]);
+    }
+
+    private static void assertRejected(String message, byte[] encoded) {
+        try {
+            ForecastCodec.decode(encoded);
+            fail(message);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static ForecastBatch createForecast(int days) {
+        ForecastBatch forecast = new ForecastBatch(days);
+        for (int day = 0; day < days; day++) {
+            forecast.addDay(FIRST_DATE + day * DAY_IN_MILLIS, 800, day, day + 10, 0, 0, 0, 0);
+        }
+        return forecast;
+    }
+}
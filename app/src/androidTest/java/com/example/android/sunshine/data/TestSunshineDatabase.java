@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.provider.BaseColumns;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
@@ -196,7 +197,7 @@ public class TestSunshineDatabase {
 
     @Test
     public void testDatabaseVersionWasIncremented() {
-        int expectedDatabaseVersion = 3;
+        int expectedDatabaseVersion = 4;
         String databaseVersionShouldBe1 = "Database version should be "
                 + expectedDatabaseVersion + " but isn't."
                 + "\n Database version: ";
@@ -385,16 +386,18 @@ public class TestSunshineDatabase {
     }
 
     /**
-     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)}. The proper
-     * behavior for this method in our case is to simply DROP (or delete) the weather table from
-     * the database and then have the table recreated.
+     * This method tests the {@link WeatherDbHelper#onUpgrade(SQLiteDatabase, int, int)} for a
+     * database that is too old to be migrated. The proper behavior in that case is to simply DROP
+     * (or delete) the weather table from the database and then have the table recreated.
+     * <p>
+     * Upgrades from versions that can be migrated are tested in {@link TestWeatherDbMigrations}.
      */
     @Test
     public void testOnUpgradeBehavesCorrectly() {
 
         testInsertSingleRecordIntoWeatherTable();
 
-        dbHelper.onUpgrade(database, 13, 14);
+        dbHelper.onUpgrade(database, 2, REFLECTED_DATABASE_VERSION);
 
         /*
          * This Cursor will contain the names of each table in our database and we will use it to
@@ -457,8 +460,9 @@ public class TestSunshineDatabase {
          */
         final HashSet<String> tableNameHashSet = new HashSet<>();
 
-        /* Here, we add the name of our only table in this particular database */
+        /* Here, we add the names of the tables in this particular database */
         tableNameHashSet.add(REFLECTED_TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         /* Students, here is where you would add any other table names if you had them */
 //        tableNameHashSet.add(MyAwesomeSuperCoolTableName);
 //        tableNameHashSet.add(MyOtherCoolTableNameThatContainsOtherCoolData);
@@ -575,4 +579,27 @@ public class TestSunshineDatabase {
         /* Close cursor */
         weatherCursor.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the database is opened in write-ahead logging mode with the configured
+     * synchronous mode, so readers aren't blocked by the sync's write transaction.
+     */
+    @Test
+    public void testDatabaseUsesWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+
+        Cursor journalMode = database.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(journalMode.moveToFirst());
+        assertEquals("Database should use write-ahead logging",
+                "wal", journalMode.getString(0).toLowerCase());
+        journalMode.close();
+
+        /* SQLite reports synchronous=NORMAL as 1 */
+        Cursor synchronous = database.rawQuery("PRAGMA synchronous", null);
+        assertTrue(synchronous.moveToFirst());
+        assertEquals("Database should use synchronous=NORMAL", 1, synchronous.getInt(0));
+        synchronous.close();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.data.SunshinePreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSunshinePreferences {
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SharedPreferences mPreferences;
+
+    @Before
+    public void setUp() {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        SunshinePreferences.resetLocationCoordinates(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mPreferences.edit().remove(mContext.getString(R.string.pref_units_key)).commit();
+        SunshinePreferences.resetLocationCoordinates(mContext);
+
+        /* The listener runs on the main thread later, the next test mustn't see stale values */
+        SunshinePreferences.refreshSnapshot(mContext);
+    }
+
+    /**
+     * Makes sure that whatever SunshinePreferences writes can be read back right away, even
+     * though the listener that updates the snapshot only runs on the main thread.
+     */
+    @Test
+    public void testWritesAreReadBackRightAway() {
+        SunshinePreferences.Snapshot before = SunshinePreferences.getSnapshot(mContext);
+        assertFalse(before.isLocationLatLonAvailable());
+
+        SunshinePreferences.setLocationDetails(mContext, 47.37, 8.54);
+
+        assertTrue(SunshinePreferences.isLocationLatLonAvailable(mContext));
+        double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(47.37, coordinates[0]);
+        assertEquals(8.54, coordinates[1]);
+
+        assertFalse("A snapshot must never change", before.isLocationLatLonAvailable());
+    }
+
+    /**
+     * The settings screen writes the preferences on its own. Makes sure the snapshot follows
+     * those writes through its change listener.
+     */
+    @Test
+    public void testSnapshotFollowsChanges() {
+        assertTrue("Sunshine should default to metric", SunshinePreferences.isMetric(mContext));
+        final SunshinePreferences.Snapshot before = SunshinePreferences.getSnapshot(mContext);
+
+        /* Listeners are called on the main thread, and right away if the change is made there */
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mPreferences.edit()
+                        .putString(mContext.getString(R.string.pref_units_key),
+                                mContext.getString(R.string.pref_units_imperial))
+                        .commit();
+            }
+        });
+
+        assertFalse("The snapshot wasn't updated", SunshinePreferences.isMetric(mContext));
+        assertNotSame(before, SunshinePreferences.getSnapshot(mContext));
+    }
+}
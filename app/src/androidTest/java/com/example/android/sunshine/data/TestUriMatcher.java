@@ -105,4 +105,43 @@ public class TestUriMatcher {
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
     }
+
+    /**
+     * Tests that the location URIs and the location scoped weather URIs are matched to their
+     * codes, and that "replace" isn't mistaken for a date.
+     */
+    @Test
+    public void testLocationUriMatcher() {
+        long locationId = 7;
+
+        assertEquals("Error: The CODE_LOCATION URI was matched incorrectly.",
+                WeatherProvider.CODE_LOCATION,
+                testMatcher.match(WeatherContract.LocationEntry.CONTENT_URI));
+
+        assertEquals("Error: The CODE_LOCATION_WITH_ID URI was matched incorrectly.",
+                WeatherProvider.CODE_LOCATION_WITH_ID,
+                testMatcher.match(WeatherContract.LocationEntry.buildLocationUri(locationId)));
+
+        assertEquals("Error: The CODE_LOCATION_WEATHER URI was matched incorrectly.",
+                WeatherProvider.CODE_LOCATION_WEATHER,
+                testMatcher.match(WeatherContract.LocationEntry.buildWeatherUri(locationId)));
+
+        assertEquals("Error: The CODE_LOCATION_WEATHER_WITH_DATE URI was matched incorrectly.",
+                WeatherProvider.CODE_LOCATION_WEATHER_WITH_DATE,
+                testMatcher.match(WeatherContract.LocationEntry
+                        .buildWeatherUriWithDate(locationId, TestUtilities.DATE_NORMALIZED)));
+
+        assertEquals("Error: The CODE_LOCATION_WEATHER_REPLACE URI was matched incorrectly.",
+                WeatherProvider.CODE_LOCATION_WEATHER_REPLACE,
+                testMatcher.match(WeatherContract.LocationEntry.buildWeatherReplaceUri(locationId)));
+
+        assertEquals("Error: The CODE_WEATHER_REPLACE URI was matched incorrectly.",
+                WeatherProvider.CODE_WEATHER_REPLACE,
+                testMatcher.match(WeatherContract.WeatherEntry.REPLACE_URI));
+
+        assertEquals("Error: The location id wasn't read from the URI.",
+                locationId,
+                WeatherContract.LocationEntry.getLocationIdFromUri(
+                        WeatherContract.LocationEntry.buildWeatherReplaceUri(locationId)));
+    }
 }
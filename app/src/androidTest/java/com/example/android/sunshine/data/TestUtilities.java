@@ -16,12 +16,15 @@
 package com.example.android.sunshine.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.HandlerThread;
 
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utils.PollingCheck;
 
@@ -35,6 +38,7 @@ import java.util.regex.Pattern;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_DATE;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_DEGREES;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_HUMIDITY;
+import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_LOCATION_ID;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_MIN_TEMP;
 import static com.example.android.sunshine.common.data.WeatherContract.WeatherEntry.COLUMN_PRESSURE;
@@ -59,6 +63,9 @@ class TestUtilities {
 
     static final int BULK_INSERT_RECORDS_TO_INSERT = 10;
 
+    /* The _ID of the location the single test weather record belongs to */
+    static final long TEST_LOCATION_ID = 1;
+
     /**
      * Ensures there is a non empty cursor and validates the cursor's data by checking it against
      * a set of expected values. This method will then close the cursor.
@@ -110,6 +117,24 @@ class TestUtilities {
         }
     }
 
+    /**
+     * Returns the location the record of {@link #createTestWeatherContentValues()} belongs to.
+     * It is the location the user prefers, so the record shows up in the WeatherEntry URIs.
+     *
+     * @param context Used to read the preferred location
+     * @return ContentValues that can be inserted into the location table of weather.db
+     */
+    static ContentValues createTestLocationContentValues(Context context) {
+
+        ContentValues testLocationValues = new ContentValues();
+
+        testLocationValues.put(WeatherContract.LocationEntry._ID, TEST_LOCATION_ID);
+        testLocationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                SunshinePreferences.getPreferredWeatherLocation(context));
+
+        return testLocationValues;
+    }
+
     /**
      * Used as a convenience method to return a singleton instance of ContentValues to populate
      * our database or insert using our ContentProvider.
@@ -120,6 +145,7 @@ class TestUtilities {
 
         ContentValues testWeatherValues = new ContentValues();
 
+        testWeatherValues.put(COLUMN_LOCATION_ID, TEST_LOCATION_ID);
         testWeatherValues.put(COLUMN_DATE, DATE_NORMALIZED);
         testWeatherValues.put(COLUMN_DEGREES, 1.1);
         testWeatherValues.put(COLUMN_HUMIDITY, 1.2);
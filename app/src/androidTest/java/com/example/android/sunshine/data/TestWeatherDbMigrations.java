@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.data.WeatherContract;
+import com.example.android.sunshine.common.data.WeatherDbHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static com.example.android.sunshine.data.TestUtilities.getStaticIntegerField;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Upgrades a database fixture from every version WeatherDbHelper can migrate from and checks
+ * that the cached forecast survives the upgrade and that the upgraded schema matches the schema
+ * of a freshly created database.
+ * <p>
+ * The fixtures are frozen copies of the schemas we shipped. When you bump DATABASE_VERSION, add
+ * the new schema to {@link #createFixture(SQLiteDatabase, int)} and leave the old ones alone.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherDbMigrations {
+
+    /* The _ID of the location the weather of the fixtures from version 4 on belongs to */
+    private static final long FIXTURE_LOCATION_ID = 1;
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private int mDatabaseVersion;
+    private int mOldestMigratableVersion;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabaseVersion =
+                getStaticIntegerField(WeatherDbHelper.class, "DATABASE_VERSION");
+        mOldestMigratableVersion =
+                getStaticIntegerField(WeatherDbHelper.class, "OLDEST_MIGRATABLE_VERSION");
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    /**
+     * The fixture of the current version must describe the same schema WeatherDbHelper creates,
+     * otherwise the fixtures have fallen behind the code.
+     */
+    @Test
+    public void testCurrentFixtureMatchesCreatedSchema() {
+        String createdSchema = describeCreatedSchema();
+
+        writeFixture(mDatabaseVersion);
+        SQLiteDatabase fixture = openFixture();
+        String fixtureSchema = describeSchema(fixture);
+        fixture.close();
+
+        assertEquals("The fixture of the current version doesn't match the created schema",
+                createdSchema, fixtureSchema);
+    }
+
+    /**
+     * Upgrades a fixture of every migratable version to the current version.
+     */
+    @Test
+    public void testUpgradeFromEveryVersionKeepsForecast() {
+        String createdSchema = describeCreatedSchema();
+
+        for (int version = mOldestMigratableVersion; version < mDatabaseVersion; version++) {
+            ContentValues[] fixtureValues = writeFixture(version);
+
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            SQLiteDatabase database = helper.getWritableDatabase();
+
+            assertEquals("Upgrade from version " + version + " didn't reach the current version",
+                    mDatabaseVersion, database.getVersion());
+            assertEquals("Upgrade from version " + version + " produced a different schema",
+                    createdSchema, describeSchema(database));
+
+            Cursor cursor = database.query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    null,
+                    null,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+            assertEquals("Upgrade from version " + version + " lost cached weather",
+                    fixtureValues.length, cursor.getCount());
+
+            cursor.moveToFirst();
+            for (int i = 0; i < fixtureValues.length; i++, cursor.moveToNext()) {
+                TestUtilities.validateCurrentRecord(
+                        "Upgrade from version " + version + " changed day " + i,
+                        cursor,
+                        fixtureValues[i]);
+            }
+
+            cursor.close();
+            helper.close();
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        }
+    }
+
+    /**
+     * Version 4 added the location table. The weather cached by version 3 belongs to the location
+     * the user has set, so that location has to be saved and the weather has to point to it.
+     */
+    @Test
+    public void testUpgradeFromVersion3AssignsPreferredLocation() {
+        writeFixture(3);
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        Cursor location = database.query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null, null, null);
+        assertEquals("The upgrade should save exactly one location", 1, location.getCount());
+        location.moveToFirst();
+        long locationId = location.getLong(0);
+        assertEquals(SunshinePreferences.getPreferredWeatherLocation(mContext),
+                location.getString(1));
+        location.close();
+
+        Cursor orphans = database.query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " != " + locationId,
+                null, null, null, null);
+        assertEquals("All weather should belong to the saved location", 0, orphans.getCount());
+        orphans.close();
+
+        helper.close();
+    }
+
+    /**
+     * A database too old to migrate is recreated, so it has to end up with the current schema.
+     */
+    @Test
+    public void testUpgradeFromUnmigratableVersionRecreatesDatabase() {
+        String createdSchema = describeCreatedSchema();
+
+        SQLiteDatabase fixture = openFixture();
+        fixture.execSQL("CREATE TABLE " + WeatherContract.WeatherEntry.TABLE_NAME
+                + " (_id INTEGER PRIMARY KEY, date INTEGER)");
+        fixture.setVersion(mOldestMigratableVersion - 1);
+        fixture.close();
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        assertEquals(createdSchema, describeSchema(database));
+        helper.close();
+    }
+
+    /**
+     * Writes the schema of the given version along with some weather to the database file.
+     *
+     * @param version The schema version to write
+     * @return The weather rows in the fixture, sorted by date
+     */
+    private ContentValues[] writeFixture(int version) {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        SQLiteDatabase fixture = openFixture();
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+
+        createFixture(fixture, version);
+        for (ContentValues value : values) {
+            ContentValues row = new ContentValues(value);
+            if (version >= 4) {
+                row.put("location_id", FIXTURE_LOCATION_ID);
+            }
+            assertTrue(fixture.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, row) != -1);
+        }
+
+        fixture.setVersion(version);
+        fixture.close();
+
+        return values;
+    }
+
+    /*
+     * The schemas we shipped, exactly as they were created back then. Don't change these and
+     * don't use the constants of WeatherContract in here, as those describe the current schema.
+     */
+    private static void createFixture(SQLiteDatabase db, int version) {
+        switch (version) {
+
+            case 3:
+                db.execSQL("CREATE TABLE weather ("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "date INTEGER NOT NULL, "
+                        + "weather_id INTEGER NOT NULL,"
+                        + "min REAL NOT NULL, "
+                        + "max REAL NOT NULL, "
+                        + "humidity REAL NOT NULL, "
+                        + "pressure REAL NOT NULL, "
+                        + "wind REAL NOT NULL, "
+                        + "degrees REAL NOT NULL, "
+                        + " UNIQUE (date) ON CONFLICT REPLACE);");
+                break;
+
+            case 4:
+                db.execSQL("CREATE TABLE location ("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "location_setting TEXT UNIQUE NOT NULL, "
+                        + "coord_lat REAL, "
+                        + "coord_long REAL);");
+                db.execSQL("CREATE TABLE weather ("
+                        + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                        + "location_id INTEGER NOT NULL, "
+                        + "date INTEGER NOT NULL, "
+                        + "weather_id INTEGER NOT NULL,"
+                        + "min REAL NOT NULL, "
+                        + "max REAL NOT NULL, "
+                        + "humidity REAL NOT NULL, "
+                        + "pressure REAL NOT NULL, "
+                        + "wind REAL NOT NULL, "
+                        + "degrees REAL NOT NULL, "
+                        + " UNIQUE (location_id, date) ON CONFLICT REPLACE);");
+                db.execSQL("INSERT INTO location (_id, location_setting) VALUES ("
+                        + FIXTURE_LOCATION_ID + ", 'Mountain View, CA')");
+                break;
+
+            default:
+                fail("There is no fixture for database version " + version);
+        }
+    }
+
+    private SQLiteDatabase openFixture() {
+        return SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+    }
+
+    private String describeCreatedSchema() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        String schema = describeSchema(helper.getReadableDatabase());
+        helper.close();
+
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        return schema;
+    }
+
+    /*
+     * Describes the tables, columns and indices of a database. The CREATE statements themselves
+     * can't be compared, as SQLite keeps the text of ALTER TABLE'd tables as it was written.
+     */
+    private static String describeSchema(SQLiteDatabase db) {
+        List<String> tables = new ArrayList<>();
+        Cursor tableCursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table'"
+                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        while (tableCursor.moveToNext()) {
+            tables.add(tableCursor.getString(0));
+        }
+        tableCursor.close();
+        Collections.sort(tables);
+
+        StringBuilder schema = new StringBuilder();
+        for (String table : tables) {
+            schema.append(table).append(" (");
+
+            Cursor columns = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+            List<String> columnDescriptions = new ArrayList<>();
+            while (columns.moveToNext()) {
+                columnDescriptions.add(columns.getString(columns.getColumnIndex("name"))
+                        + " " + columns.getString(columns.getColumnIndex("type"))
+                        + (columns.getInt(columns.getColumnIndex("notnull")) != 0 ? " NOT NULL" : "")
+                        + (columns.getInt(columns.getColumnIndex("pk")) != 0 ? " PK" : ""));
+            }
+            columns.close();
+            Collections.sort(columnDescriptions);
+            schema.append(columnDescriptions).append(")\n");
+
+            Cursor indices = db.rawQuery("PRAGMA index_list(" + table + ")", null);
+            List<String> indexDescriptions = new ArrayList<>();
+            while (indices.moveToNext()) {
+                String index = indices.getString(indices.getColumnIndex("name"));
+                boolean unique = indices.getInt(indices.getColumnIndex("unique")) != 0;
+
+                List<String> indexColumns = new ArrayList<>();
+                Cursor indexInfo = db.rawQuery("PRAGMA index_info(" + index + ")", null);
+                while (indexInfo.moveToNext()) {
+                    indexColumns.add(indexInfo.getString(indexInfo.getColumnIndex("name")));
+                }
+                indexInfo.close();
+
+                indexDescriptions.add((unique ? "UNIQUE " : "") + indexColumns);
+            }
+            indices.close();
+            Collections.sort(indexDescriptions);
+            schema.append("  index ").append(indexDescriptions).append('\n');
+        }
+        return schema.toString();
+    }
+}
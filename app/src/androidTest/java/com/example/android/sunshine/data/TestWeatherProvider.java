@@ -17,6 +17,7 @@ package com.example.android.sunshine.data;
 
 import android.content.ComponentName;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.PackageManager;
@@ -26,7 +27,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 
+import com.example.android.sunshine.common.data.ForecastBatch;
 import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.common.data.WeatherDbHelper;
 import com.example.android.sunshine.common.data.WeatherProvider;
@@ -35,6 +39,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.lang.reflect.Method;
+
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
@@ -172,6 +178,11 @@ public class TestWeatherProvider {
         WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
         SQLiteDatabase database = dbHelper.getWritableDatabase();
 
+        /* The WeatherEntry URIs only return the weather of the preferred location */
+        database.insert(WeatherContract.LocationEntry.TABLE_NAME,
+                null,
+                TestUtilities.createTestLocationContentValues(mContext));
+
         /* Obtain weather values from TestUtilities */
         ContentValues testWeatherValues = TestUtilities.createTestWeatherContentValues();
 
@@ -330,6 +341,321 @@ public class TestWeatherProvider {
         cursor.close();
     }
 
+    /**
+     * The dates of a batch are validated before anything is written, so a single bad date at the
+     * end of the batch must leave the table untouched.
+     */
+    @Test
+    public void testBulkInsertRejectsUnnormalizedDate() {
+        ContentValues[] bulkInsertTestContentValues = createBulkInsertTestWeatherValues();
+        ContentValues lastDay = bulkInsertTestContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1];
+        lastDay.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                lastDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE) + 1);
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        try {
+            contentResolver.bulkInsert(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    bulkInsertTestContentValues);
+            fail("bulkInsert should reject a date that isn't normalized");
+        } catch (IllegalArgumentException expected) {
+            /* This is what we want */
+        }
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null);
+
+        assertNotNull(cursor);
+        assertEquals("No rows should have been inserted", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Inserts the forecast as a ForecastBatch, the way the sync does, and checks that the rows
+     * read back are the same as the ones inserted as ContentValues. A day that lacks one of the
+     * forecast columns can't be turned into a batch and must be rejected.
+     */
+    @Test
+    public void testBulkInsertForecastBatch() {
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        int rowsInserted = WeatherProvider.bulkInsertForecast(contentResolver,
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastBatch.fromContentValues(values));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, rowsInserted);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(cursor);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testBulkInsertForecastBatch. Error validating WeatherEntry " + i,
+                    cursor,
+                    values[i]);
+        }
+        cursor.close();
+
+        values[0].remove(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        try {
+            contentResolver.bulkInsert(WeatherContract.WeatherEntry.REPLACE_URI, values);
+            fail("bulkInsert should reject a day without a pressure");
+        } catch (IllegalArgumentException expected) {
+            /* This is what we want */
+        }
+    }
+
+    /**
+     * This test replaces a stored forecast through {@link WeatherContract.WeatherEntry#REPLACE_URI}
+     * and checks that only the days that differ are touched: the first day is dropped, one day
+     * changes and one day is added. Replacing the forecast with itself must not change anything.
+     */
+    @Test
+    public void testReplaceForecast() {
+        testBulkInsert();
+
+        ContentValues[] storedValues = createBulkInsertTestWeatherValues();
+        ContentValues[] newValues = new ContentValues[BULK_INSERT_RECORDS_TO_INSERT];
+
+        /* Drop the first day and shift everything else up by one */
+        System.arraycopy(storedValues, 1, newValues, 0, BULK_INSERT_RECORDS_TO_INSERT - 1);
+
+        /* Change the weather of one of the days */
+        newValues[0] = new ContentValues(newValues[0]);
+        newValues[0].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 500);
+
+        /* And add a day at the end */
+        ContentValues lastDay = new ContentValues(storedValues[BULK_INSERT_RECORDS_TO_INSERT - 1]);
+        long lastDate = lastDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        lastDay.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                lastDate + (lastDate - storedValues[0].getAsLong(
+                        WeatherContract.WeatherEntry.COLUMN_DATE)) / (BULK_INSERT_RECORDS_TO_INSERT - 1));
+        newValues[BULK_INSERT_RECORDS_TO_INSERT - 1] = lastDay;
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        int rowsChanged = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.REPLACE_URI,
+                newValues);
+
+        assertEquals("Replacing the forecast should delete, update and insert one row each",
+                3, rowsChanged);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertNotNull(cursor);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testReplaceForecast. Error validating WeatherEntry " + i,
+                    cursor,
+                    newValues[i]);
+        }
+        cursor.close();
+
+        int rowsChangedAgain = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.REPLACE_URI,
+                newValues);
+
+        assertEquals("Replacing the forecast with itself shouldn't change anything",
+                0, rowsChangedAgain);
+    }
+
+    /**
+     * A sync that is cancelled must not leave a half written forecast behind. Makes sure that
+     * replacing the forecast with a cancelled signal fails and keeps the stored forecast as it was.
+     */
+    @Test
+    public void testCancelledReplaceKeepsForecast() {
+        testBulkInsert();
+
+        ContentValues[] newValues = createBulkInsertTestWeatherValues();
+        for (ContentValues day : newValues) {
+            day.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 500);
+        }
+
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        try {
+            WeatherProvider.bulkInsertForecast(contentResolver,
+                    WeatherContract.WeatherEntry.REPLACE_URI,
+                    ForecastBatch.fromContentValues(newValues),
+                    signal);
+            fail("Replacing the forecast should fail once the signal is cancelled");
+        } catch (OperationCanceledException expected) {
+            /* This is what we want */
+        }
+
+        ContentValues[] storedValues = createBulkInsertTestWeatherValues();
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertNotNull(cursor);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testCancelledReplaceKeepsForecast. Error validating WeatherEntry " + i,
+                    cursor,
+                    storedValues[i]);
+        }
+        cursor.close();
+    }
+
+    /**
+     * Stores a forecast for two locations through the location scoped URIs and checks that each
+     * location only sees its own forecast, and that deleting a location deletes its forecast but
+     * leaves the other one alone.
+     */
+    @Test
+    public void testLocationsKeepSeparateForecasts() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        long firstLocationId = insertLocation(contentResolver, "Mountain View, CA");
+        long secondLocationId = insertLocation(contentResolver, "Zurich, Switzerland");
+
+        assertEquals("Inserting a saved location again should return the same location",
+                firstLocationId, insertLocation(contentResolver, "Mountain View, CA"));
+
+        ContentValues[] forecast = createBulkInsertTestWeatherValues();
+        ContentValues[] shortForecast = new ContentValues[3];
+        System.arraycopy(forecast, 0, shortForecast, 0, shortForecast.length);
+
+        contentResolver.bulkInsert(
+                WeatherContract.LocationEntry.buildWeatherReplaceUri(firstLocationId), forecast);
+        contentResolver.bulkInsert(
+                WeatherContract.LocationEntry.buildWeatherReplaceUri(secondLocationId), shortForecast);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, countWeather(contentResolver,
+                WeatherContract.LocationEntry.buildWeatherUri(firstLocationId)));
+        assertEquals(shortForecast.length, countWeather(contentResolver,
+                WeatherContract.LocationEntry.buildWeatherUri(secondLocationId)));
+
+        /* The same day can be queried for both locations */
+        long date = forecast[0].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        assertEquals(1, countWeather(contentResolver,
+                WeatherContract.LocationEntry.buildWeatherUriWithDate(secondLocationId, date)));
+
+        int deleted = contentResolver.delete(
+                WeatherContract.LocationEntry.buildLocationUri(firstLocationId), null, null);
+        assertEquals("The location wasn't deleted", 1, deleted);
+
+        assertEquals("The forecast of a deleted location should be gone", 0,
+                countWeather(contentResolver,
+                        WeatherContract.LocationEntry.buildWeatherUri(firstLocationId)));
+        assertEquals("Deleting a location shouldn't touch the other locations",
+                shortForecast.length, countWeather(contentResolver,
+                        WeatherContract.LocationEntry.buildWeatherUri(secondLocationId)));
+    }
+
+    /**
+     * Replaces the forecast and checks that queries the provider answers from its in-memory
+     * snapshot return exactly what the database returns for an equivalent query it can't answer
+     * from memory. Deleting the forecast must drop the snapshot.
+     */
+    @Test
+    public void testSnapshotMatchesDatabase() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+        ContentValues[] forecast = createBulkInsertTestWeatherValues();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.REPLACE_URI, forecast);
+
+        long secondDate = forecast[1].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        String[] projection = {
+                WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_DEGREES,
+        };
+
+        /* The selection arguments keep the second query from being answered from memory */
+        Cursor fromSnapshot = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                projection,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + secondDate,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor fromDatabase = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                projection,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{Long.toString(secondDate)},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertSameRows(fromDatabase, fromSnapshot);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, fromSnapshot.getCount());
+        fromSnapshot.close();
+        fromDatabase.close();
+
+        Cursor day = contentResolver.query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithDate(secondDate),
+                null, null, null, null);
+        assertNotNull(day);
+        assertTrue("The day should be found", day.moveToFirst());
+        TestUtilities.validateCurrentRecord("testSnapshotMatchesDatabase", day, forecast[1]);
+        day.close();
+
+        contentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        assertEquals("Deleting the forecast should drop the snapshot",
+                0, countWeather(contentResolver, WeatherContract.WeatherEntry.CONTENT_URI));
+    }
+
+    private static void assertSameRows(Cursor expected, Cursor actual) {
+        assertNotNull(expected);
+        assertNotNull(actual);
+        assertEquals("Different number of rows", expected.getCount(), actual.getCount());
+        assertEquals("Different columns", expected.getColumnCount(), actual.getColumnCount());
+
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            for (int column = 0; column < expected.getColumnCount(); column++) {
+                assertEquals("Different type in column " + expected.getColumnName(column),
+                        expected.getType(column), actual.getType(column));
+                assertEquals("Different value in column " + expected.getColumnName(column),
+                        expected.getString(column), actual.getString(column));
+            }
+        }
+    }
+
+    private static long insertLocation(ContentResolver contentResolver, String locationSetting) {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+
+        Uri locationUri = contentResolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location);
+        assertNotNull("Inserting a location should return its URI", locationUri);
+        return ContentUris.parseId(locationUri);
+    }
+
+    private static int countWeather(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
     /**
      * This test deletes all records from the weather table using the ContentProvider. It also
      * verifies that registered ContentObservers receive onChange callbacks when data is deleted.
@@ -446,8 +772,23 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.LocationEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
+
+        /*
+         * The provider keeps the forecast and the location _IDs in memory and won't notice that
+         * we went around it, so throw away what it remembers as well.
+         */
+        try {
+            Class cache = Class.forName(
+                    "com.example.android.sunshine.common.data.ForecastSnapshotCache");
+            Method clear = cache.getDeclaredMethod("clear");
+            clear.setAccessible(true);
+            clear.invoke(null);
+        } catch (Exception e) {
+            fail("Couldn't clear the ForecastSnapshotCache: " + e);
+        }
     }
 }
\ No newline at end of file
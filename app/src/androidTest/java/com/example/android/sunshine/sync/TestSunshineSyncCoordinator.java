@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.data.SunshinePreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineSyncCoordinator {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SharedPreferences mPreferences;
+
+    private String mLocationKey;
+
+    private FakeSyncRunner mRunner;
+
+    @Before
+    public void setUp() {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        setPreferredLocation("94043,USA");
+        mRunner = new FakeSyncRunner();
+    }
+
+    @After
+    public void tearDown() {
+        mRunner.release();
+        mRunner.shutdown();
+
+        mPreferences.edit().remove(mLocationKey).commit();
+        SunshinePreferences.refreshSnapshot(mContext);
+    }
+
+    /**
+     * Makes sure a request that comes in while a sync is running gets that sync, and is told
+     * when it is done.
+     */
+    @Test
+    public void testJoinsSyncInFlight() throws Exception {
+        SunshineSyncCoordinator coordinator = newCoordinator(TimeUnit.SECONDS.toMillis(30));
+        final CountDownLatch onDone = new CountDownLatch(1);
+
+        Future<Void> first = coordinator.requestSync();
+        Future<Void> second = coordinator.requestSync(new Runnable() {
+            @Override
+            public void run() {
+                onDone.countDown();
+            }
+        });
+
+        assertSame("The request didn't join the running sync", first, second);
+        assertFalse(second.isDone());
+
+        mRunner.release();
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertTrue("onDone wasn't run", onDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mRunner.getSyncCount());
+    }
+
+    /**
+     * Makes sure a request right after a sync finished gets that sync, and one that comes in
+     * after the debounce time starts a new one.
+     */
+    @Test
+    public void testJoinsFinishedSyncWithinDebounce() throws Exception {
+        mRunner.release();
+
+        SunshineSyncCoordinator debounced = newCoordinator(TimeUnit.SECONDS.toMillis(30));
+        Future<Void> first = debounced.requestSync();
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        final CountDownLatch onDone = new CountDownLatch(1);
+        Future<Void> second = debounced.requestSync(new Runnable() {
+            @Override
+            public void run() {
+                onDone.countDown();
+            }
+        });
+        assertSame("The request didn't join the sync that just finished", first, second);
+        assertEquals("onDone wasn't run right away", 0, onDone.getCount());
+        assertEquals(1, mRunner.getSyncCount());
+
+        long debounceMillis = 100;
+        SunshineSyncCoordinator shortDebounce = newCoordinator(debounceMillis);
+        Future<Void> expired = shortDebounce.requestSync();
+        expired.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Thread.sleep(2 * debounceMillis);
+
+        Future<Void> fresh = shortDebounce.requestSync();
+        assertNotSame("The request joined a sync older than the debounce time", expired, fresh);
+        fresh.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(3, mRunner.getSyncCount());
+    }
+
+    /**
+     * Makes sure a request for a location the user just picked isn't answered with a sync that
+     * was started for the old one.
+     */
+    @Test
+    public void testLocationChangeStartsNewSync() throws Exception {
+        SunshineSyncCoordinator coordinator = newCoordinator(TimeUnit.SECONDS.toMillis(30));
+
+        Future<Void> oldLocation = coordinator.requestSync();
+        setPreferredLocation("8001,Switzerland");
+        Future<Void> newLocation = coordinator.requestSync();
+
+        assertNotSame("The new location joined the sync of the old one", oldLocation, newLocation);
+
+        mRunner.release();
+        oldLocation.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        newLocation.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, mRunner.getSyncCount());
+    }
+
+    /**
+     * Makes sure a shared sync is only cancelled once every request for it has been withdrawn.
+     */
+    @Test
+    public void testCancelledOnlyWhenAllRequestsWithdrawn() {
+        SunshineSyncCoordinator coordinator = newCoordinator(TimeUnit.SECONDS.toMillis(30));
+
+        Future<Void> first = coordinator.requestSync();
+        Future<Void> second = coordinator.requestSync();
+
+        assertFalse("Withdrawing one request cancelled the sync", first.cancel(false));
+        assertEquals(0, mRunner.getCancelCount());
+
+        assertTrue("Withdrawing the last request didn't cancel the sync", second.cancel(false));
+        assertEquals(1, mRunner.getCancelCount());
+        assertTrue(second.isCancelled());
+
+        Future<Void> next = coordinator.requestSync();
+        assertNotSame("The request joined a cancelled sync", second, next);
+    }
+
+    private SunshineSyncCoordinator newCoordinator(long debounceMillis) {
+        return new SunshineSyncCoordinator(mContext, mRunner, debounceMillis);
+    }
+
+    private void setPreferredLocation(String locationSetting) {
+        mPreferences.edit().putString(mLocationKey, locationSetting).commit();
+
+        /* The listener runs on the main thread later, the coordinator reads the snapshot now */
+        SunshinePreferences.refreshSnapshot(mContext);
+    }
+
+    /**
+     * Runs syncs one after the other like the engine does, but they only return once the test
+     * releases them.
+     */
+    private static final class FakeSyncRunner implements SunshineSyncCoordinator.SyncRunner {
+
+        private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        private final AtomicInteger mSyncCount = new AtomicInteger();
+
+        private final AtomicInteger mCancelCount = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable syncRun) {
+            mExecutor.execute(syncRun);
+        }
+
+        @Override
+        public void sync(CancellationSignal signal) {
+            try {
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mSyncCount.incrementAndGet();
+        }
+
+        @Override
+        public void cancel(CancellationSignal signal) {
+            mCancelCount.incrementAndGet();
+            signal.cancel();
+        }
+
+        void release() {
+            mRelease.countDown();
+        }
+
+        void shutdown() {
+            mExecutor.shutdownNow();
+        }
+
+        int getSyncCount() {
+            return mSyncCount.get();
+        }
+
+        int getCancelCount() {
+            return mCancelCount.get();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineSyncScheduler {
+
+    private static final long HOUR_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Without any statistics yet, Sunshine syncs every 3 hours like it always did.
+     */
+    @Test
+    public void testDefaultIntervalIsThreeHours() {
+        int interval = SunshineSyncScheduler.computeIntervalSeconds(0.5f, 0, 0, 0);
+        assertEquals(3 * HOUR_SECONDS, interval);
+    }
+
+    /**
+     * Makes sure a forecast that keeps changing is synced more often than a stable one, and that
+     * syncs that bring nothing new stretch the interval.
+     */
+    @Test
+    public void testVolatileForecastsSyncMoreOften() {
+        int volatileInterval = SunshineSyncScheduler.computeIntervalSeconds(1f, 0, 0, 0);
+        int stableInterval = SunshineSyncScheduler.computeIntervalSeconds(0f, 0, 0, 0);
+        int noOpInterval = SunshineSyncScheduler.computeIntervalSeconds(0f, 4, 0, 0);
+
+        assertTrue("Volatile forecast not synced more often", volatileInterval < 3 * HOUR_SECONDS);
+        assertTrue("Stable forecast not synced less often", stableInterval > 3 * HOUR_SECONDS);
+        assertTrue("Unchanged syncs didn't stretch the interval", noOpInterval > stableInterval);
+    }
+
+    /**
+     * Makes sure active users get fresher weather than inactive ones, and that the interval stays
+     * within its bounds.
+     */
+    @Test
+    public void testActiveUsersSyncMoreOften() {
+        int activeInterval = SunshineSyncScheduler.computeIntervalSeconds(1f, 0, DAY_MILLIS / 4, 0);
+        int inactiveInterval = SunshineSyncScheduler.computeIntervalSeconds(0f, 4, DAY_MILLIS, 7 * DAY_MILLIS);
+
+        assertEquals(HOUR_SECONDS * 3 / 2, activeInterval);
+        assertEquals(12 * HOUR_SECONDS, inactiveInterval);
+    }
+}
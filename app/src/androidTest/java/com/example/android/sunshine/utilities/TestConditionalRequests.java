@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.data.ResponseValidators;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests the conditional and compressed requests of {@link NetworkUtils} against a tiny HTTP
+ * server running on the device, so no network access is needed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestConditionalRequests {
+
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Wed, 11 Jan 2017 08:00:00 GMT";
+    private static final String BODY = "{\"cod\":\"200\"}";
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private LocalServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new LocalServer();
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getPort() + "/weather");
+        ResponseValidators.clearValidators(mContext, mUrl.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ResponseValidators.clearValidators(mContext, mUrl.toString());
+        mServer.shutdown();
+    }
+
+    @Test
+    public void testSecondRequestIsNotModified() throws IOException {
+        RecordingHandler firstHandler = new RecordingHandler();
+        String firstResponse = NetworkUtils.getResponseFromHttpUrl(mContext, mUrl, firstHandler, null);
+
+        assertEquals("First request should return the body", BODY, firstResponse);
+        assertFalse("First request shouldn't be reported as not modified", firstHandler.mNotModified);
+        assertEquals("ETag of the response wasn't stored",
+                ETAG, ResponseValidators.getETag(mContext, mUrl.toString()));
+        assertEquals("Last-Modified of the response wasn't stored",
+                LAST_MODIFIED, ResponseValidators.getLastModified(mContext, mUrl.toString()));
+
+        RecordingHandler secondHandler = new RecordingHandler();
+        String secondResponse = NetworkUtils.getResponseFromHttpUrl(mContext, mUrl, secondHandler, null);
+
+        assertNull("A 304 response must not have a body", secondResponse);
+        assertTrue("Second request should be reported as not modified", secondHandler.mNotModified);
+        assertTrue("If-None-Match wasn't sent with the second request",
+                mServer.getRequestHeaders(1).contains("if-none-match: " + ETAG.toLowerCase()));
+    }
+
+    @Test
+    public void testClearedValidatorsFetchAgain() throws IOException {
+        NetworkUtils.getResponseFromHttpUrl(mContext, mUrl, new RecordingHandler(), null);
+        ResponseValidators.clearValidators(mContext, mUrl.toString());
+
+        RecordingHandler handler = new RecordingHandler();
+        String response = NetworkUtils.getResponseFromHttpUrl(mContext, mUrl, handler, null);
+
+        assertEquals("Request without validators should return the body", BODY, response);
+        assertFalse(handler.mNotModified);
+    }
+
+    @Test
+    public void testGzipResponseIsInflated() throws IOException {
+        assertCompressedResponse("gzip");
+    }
+
+    @Test
+    public void testDeflateResponseIsInflated() throws IOException {
+        assertCompressedResponse("deflate");
+    }
+
+    @Test
+    public void testUncompressedResponseIsCounted() throws IOException {
+        TransferStats stats = new TransferStats();
+        NetworkUtils.getResponseFromHttpUrl(mContext, mUrl, new RecordingHandler(), stats);
+
+        int bodyLength = BODY.getBytes("UTF-8").length;
+        assertEquals(1, stats.getResponseCount());
+        assertEquals(bodyLength, stats.getTransferredBytes());
+        assertEquals(bodyLength, stats.getDecodedBytes());
+    }
+
+    /**
+     * Makes sure a body the server compressed is handed to the handler inflated, and that the
+     * stats count the compressed bytes as transferred and the inflated ones as decoded.
+     */
+    private void assertCompressedResponse(String contentEncoding) throws IOException {
+        mServer.setContentEncoding(contentEncoding);
+        TransferStats stats = new TransferStats();
+
+        String response = NetworkUtils.getResponseFromHttpUrl(
+                mContext, mUrl, new RecordingHandler(), stats);
+
+        assertEquals("The " + contentEncoding + " body wasn't inflated", BODY, response);
+        assertTrue("Accept-Encoding wasn't sent",
+                mServer.getRequestHeaders(0).contains("accept-encoding: gzip, deflate"));
+
+        assertEquals(1, stats.getResponseCount());
+        assertEquals("Wrong number of transferred bytes",
+                LocalServer.encode(BODY.getBytes("UTF-8"), contentEncoding).length,
+                stats.getTransferredBytes());
+        assertEquals("Wrong number of decoded bytes",
+                BODY.getBytes("UTF-8").length, stats.getDecodedBytes());
+    }
+
+    private static class RecordingHandler implements NetworkUtils.ResponseHandler<String> {
+
+        boolean mNotModified;
+
+        @Override
+        public String handleResponse(InputStream in, int contentLength) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            return reader.readLine();
+        }
+
+        @Override
+        public String handleNotModified() {
+            mNotModified = true;
+            return null;
+        }
+    }
+
+    /**
+     * Answers every request with the forecast and its validators, unless the request carries a
+     * matching If-None-Match header, in which case it answers "304 Not Modified". The forecast is
+     * compressed with the content encoding set by the test, if any.
+     */
+    private static class LocalServer extends Thread {
+
+        private final ServerSocket mServerSocket;
+        private final List<String> mRequestHeaders =
+                Collections.synchronizedList(new ArrayList<String>());
+        private volatile String mContentEncoding;
+
+        LocalServer() throws IOException {
+            mServerSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            setDaemon(true);
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        String getRequestHeaders(int request) {
+            return mRequestHeaders.get(request);
+        }
+
+        void setContentEncoding(String contentEncoding) {
+            mContentEncoding = contentEncoding;
+        }
+
+        static byte[] encode(byte[] body, String contentEncoding) throws IOException {
+            if (contentEncoding == null) {
+                return body;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            OutputStream out = "gzip".equals(contentEncoding)
+                    ? new GZIPOutputStream(bytes)
+                    : new DeflaterOutputStream(bytes);
+            out.write(body);
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        void shutdown() throws IOException {
+            mServerSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    try {
+                        handle(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    /* The socket has been closed by shutdown() */
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+
+            StringBuilder headers = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                headers.append(line.toLowerCase()).append('\n');
+            }
+            mRequestHeaders.add(headers.toString());
+
+            String response;
+            byte[] body = new byte[0];
+            if (headers.indexOf("if-none-match: " + ETAG.toLowerCase()) >= 0) {
+                response = "HTTP/1.1 304 Not Modified\r\n"
+                        + "ETag: " + ETAG + "\r\n"
+                        + "Connection: close\r\n\r\n";
+            } else {
+                String contentEncoding = mContentEncoding;
+                body = encode(BODY.getBytes("UTF-8"), contentEncoding);
+                response = "HTTP/1.1 200 OK\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + (contentEncoding != null ? "Content-Encoding: " + contentEncoding + "\r\n" : "")
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "ETag: " + ETAG + "\r\n"
+                        + "Last-Modified: " + LAST_MODIFIED + "\r\n"
+                        + "Connection: close\r\n\r\n";
+            }
+
+            OutputStream out = socket.getOutputStream();
+            out.write(response.getBytes("UTF-8"));
+            out.write(body);
+            out.flush();
+        }
+    }
+}
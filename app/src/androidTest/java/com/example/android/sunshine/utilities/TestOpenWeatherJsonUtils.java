@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks the streaming forecast parser against the JSONObject based one. Both parsers have to
+ * produce exactly the same ContentValues for the same response.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /*
+     * A trimmed down response of the weather server. The fields are deliberately ordered
+     * differently from day to day and contain values the parsers have to skip.
+     */
+    private static final String FORECAST_JSON = "{"
+            + "\"city\":{\"id\":5375480,\"name\":\"Mountain View\","
+            + "\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},"
+            + "\"cod\":\"200\",\"message\":0.0144,\"cnt\":3,"
+            + "\"list\":["
+            + "{\"dt\":1484164800,\"temp\":{\"day\":12.3,\"min\":4.25,\"max\":14.5,\"night\":4.25},"
+            + "\"pressure\":1021.58,\"humidity\":71,"
+            + "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"icon\":\"01d\"},{\"id\":701}],"
+            + "\"speed\":1.21,\"deg\":312,\"clouds\":0},"
+            + "{\"weather\":[{\"id\":501}],\"deg\":97,\"speed\":4.2,\"humidity\":93,"
+            + "\"pressure\":1013,\"rain\":{\"3h\":3.5},\"temp\":{\"max\":11,\"min\":7.13}},"
+            + "{\"dt\":1484337600,\"pressure\":1018.4,\"humidity\":80,\"speed\":0.5,\"deg\":0,"
+            + "\"temp\":{\"min\":-2.5,\"max\":3.75,\"eve\":[1,2,3]},\"weather\":[{\"id\":601}]}"
+            + "]}";
+
+    private static final String ERROR_JSON = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+
+    private static final String MISSING_FIELD_JSON = "{"
+            + "\"city\":{\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}},"
+            + "\"list\":[{\"pressure\":1021.58,\"humidity\":71,\"speed\":1.21,\"deg\":312,"
+            + "\"temp\":{\"min\":4.25,\"max\":14.5}}]}";
+
+    @Test
+    public void testStreamingParserMatchesJsonObjectParser() throws Exception {
+        ContentValues[] expected = OpenWeatherJsonUtils
+                .getWeatherContentValuesFromJson(mContext, FORECAST_JSON);
+        ContentValues[] actual = OpenWeatherJsonUtils
+                .getWeatherContentValuesFromStream(mContext, toStream(FORECAST_JSON));
+
+        assertNotNull("JSONObject parser didn't return any values", expected);
+        assertNotNull("Streaming parser didn't return any values", actual);
+        assertEquals("Parsers returned a different number of days", expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Parsers disagree about day " + i, expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void testStreamingParserReturnsNullForErrorCode() throws Exception {
+        assertNull("JSONObject parser should return null for an error response",
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, ERROR_JSON));
+        assertNull("Streaming parser should return null for an error response",
+                OpenWeatherJsonUtils.getWeatherContentValuesFromStream(mContext, toStream(ERROR_JSON)));
+    }
+
+    @Test
+    public void testStreamingParserRejectsIncompleteDay() {
+        assertTrue(OpenWeatherJsonUtils.isStreamingParserAvailable());
+        try {
+            OpenWeatherJsonUtils.getWeatherContentValuesFromStream(mContext,
+                    toStream(MISSING_FIELD_JSON));
+            fail("Streaming parser should reject a day without a weather id");
+        } catch (IOException expected) {
+            /* This is what we want */
+        }
+    }
+
+    @Test
+    public void testParsersReturnCityCoordinates() throws Exception {
+        double[] jsonCoordinates = new double[2];
+        double[] streamCoordinates = new double[2];
+        OpenWeatherJsonUtils.getWeatherContentValuesFromJson(FORECAST_JSON, jsonCoordinates);
+        OpenWeatherJsonUtils.getWeatherContentValuesFromStream(toStream(FORECAST_JSON),
+                streamCoordinates);
+
+        assertEquals("Wrong latitude from JSONObject parser", 37.3861, jsonCoordinates[0], 0);
+        assertEquals("Wrong longitude from JSONObject parser", -122.0838, jsonCoordinates[1], 0);
+        assertEquals("Wrong latitude from streaming parser", 37.3861, streamCoordinates[0], 0);
+        assertEquals("Wrong longitude from streaming parser", -122.0838, streamCoordinates[1], 0);
+    }
+
+    private static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
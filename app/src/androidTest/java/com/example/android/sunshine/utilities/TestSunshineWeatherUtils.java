@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineWeatherUtils {
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        setUnits(R.string.pref_units_metric);
+    }
+
+    @After
+    public void tearDown() {
+        setUnits(R.string.pref_units_metric);
+    }
+
+    private void setUnits(int unitsResourceId) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(unitsResourceId))
+                .commit();
+        SunshinePreferences.refreshSnapshot(mContext);
+    }
+
+    /**
+     * The temperatures come from a table now. Makes sure they read exactly like they did when
+     * every one of them was formatted, in both units and beyond the range of the table.
+     */
+    @Test
+    public void testTemperaturesAreFormattedAsBefore() {
+        String format = mContext.getString(R.string.format_temperature);
+
+        for (double celsius = -100; celsius <= 70; celsius += 0.125) {
+            assertEquals(String.format(format, celsius),
+                    SunshineWeatherUtils.formatTemperature(mContext, celsius));
+        }
+
+        setUnits(R.string.pref_units_imperial);
+        for (double celsius = -100; celsius <= 70; celsius += 0.125) {
+            assertEquals(String.format(format, celsius * 1.8 + 32),
+                    SunshineWeatherUtils.formatTemperature(mContext, celsius));
+        }
+    }
+
+    /**
+     * Makes sure a temperature is formatted once, and that the table follows the units.
+     */
+    @Test
+    public void testTemperaturesAreInterned() {
+        String formatted = SunshineWeatherUtils.formatTemperature(mContext, 21.2);
+        assertSame(formatted, SunshineWeatherUtils.formatTemperature(mContext, 20.8));
+
+        setUnits(R.string.pref_units_imperial);
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 70.0),
+                SunshineWeatherUtils.formatTemperature(mContext, 21.2));
+    }
+
+    /**
+     * Checks the compass directions at and around their boundaries.
+     */
+    @Test
+    public void testWindDirections() {
+        String format = mContext.getString(R.string.format_wind_kmh);
+
+        float[] degrees = {0f, 22.4f, 22.5f, 67.5f, 112.4f, 157.5f, 202.5f, 247.5f, 292.5f, 337.4f,
+                337.5f, 360f, -10f, Float.NaN};
+        String[] directions = {"N", "N", "NE", "E", "E", "S", "SW", "W", "NW", "NW",
+                "N", "N", "N", "Unknown"};
+
+        for (int i = 0; i < degrees.length; i++) {
+            assertEquals("Wrong direction for " + degrees[i] + " degrees",
+                    String.format(format, 12.4f, directions[i]),
+                    SunshineWeatherUtils.getFormattedWind(mContext, 12.4f, degrees[i]));
+        }
+
+        setUnits(R.string.pref_units_imperial);
+        assertEquals(String.format(mContext.getString(R.string.format_wind_mph), 6.2137f, "SW"),
+                SunshineWeatherUtils.getFormattedWind(mContext, 10f, 225f));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.common.utilities.WeatherIconCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherIconCache {
+
+    /* Heavy rain, drawn with the storm art */
+    private static final int WEATHER_ID = 502;
+
+    /* Context used to access various parts of the system */
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * The large art is vector art on newer devices, which BitmapFactory can't decode. Makes sure
+     * the cache draws it into a bitmap of the requested size anyway.
+     */
+    @Test
+    public void testLargeArtIsDrawnAtRequestedSize() {
+        int resourceId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(WEATHER_ID);
+
+        Bitmap icon = WeatherIconCache.getIcon(mContext, resourceId, 77);
+
+        assertNotNull("Large art could not be drawn into a bitmap", icon);
+        assertEquals(77, icon.getWidth());
+        assertEquals(77, icon.getHeight());
+    }
+
+    /**
+     * Makes sure an icon is decoded once per size, and that prewarming fills the cache.
+     */
+    @Test
+    public void testIconsAreCachedPerSize() {
+        int resourceId = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(WEATHER_ID);
+
+        WeatherIconCache.prewarm(mContext, new int[]{resourceId}, 31);
+        Bitmap prewarmed = WeatherIconCache.getCachedIcon(resourceId, 31);
+        assertNotNull("Prewarming didn't cache the icon", prewarmed);
+
+        assertSame("Cached icon was decoded again",
+                prewarmed, WeatherIconCache.getIcon(mContext, resourceId, 31));
+        assertNotSame("Icons of different sizes share a bitmap",
+                prewarmed, WeatherIconCache.getIcon(mContext, resourceId, 32));
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.graphics.Bitmap;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -27,6 +28,7 @@ import android.widget.TextView;
 
 import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.common.utilities.WeatherIconCache;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -65,6 +67,10 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
 
     private Cursor mCursor;
 
+    /* The sizes of the weather icons of today and of the other days in pixels */
+    private final int mTodayIconSize;
+    private final int mListIconSize;
+
     /**
      * Creates a ForecastAdapter.
      *
@@ -76,6 +82,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         mContext = context;
         mClickHandler = clickHandler;
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
+        mTodayIconSize = mContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        mListIconSize = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
     }
 
     /**
@@ -136,6 +144,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
          ****************/
         int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
         int weatherImageId;
+        int weatherImageSize;
 
         int viewType = getItemViewType(position);
 
@@ -144,18 +153,30 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
             case VIEW_TYPE_TODAY:
                 weatherImageId = SunshineWeatherUtils
                         .getLargeArtResourceIdForWeatherCondition(weatherId);
+                weatherImageSize = mTodayIconSize;
                 break;
 
             case VIEW_TYPE_FUTURE_DAY:
                 weatherImageId = SunshineWeatherUtils
                         .getSmallArtResourceIdForWeatherCondition(weatherId);
+                weatherImageSize = mListIconSize;
                 break;
 
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
+        /*
+         * The icons of the forecast are decoded in the background when the cursor is swapped in.
+         * Binding never decodes one itself: until the icon is ready, which it usually isn't for
+         * the first rows, the row shows the drawable as it is.
+         */
+        Bitmap icon = WeatherIconCache.getCachedIcon(weatherImageId, weatherImageSize);
+        if (icon != null) {
+            forecastAdapterViewHolder.iconView.setImageBitmap(icon);
+        } else {
+            forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
+        }
 
         /****************
          * Weather Date *
@@ -256,9 +277,34 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        prewarmIcons();
         notifyDataSetChanged();
     }
 
+    /**
+     * Decodes the icons of the forecast in the cursor in the background, at the size the list
+     * shows them at, so the rows bound once they are ready find them decoded.
+     */
+    private void prewarmIcons() {
+        if (mCursor == null || !mCursor.moveToFirst()) {
+            return;
+        }
+
+        if (mUseTodayLayout) {
+            int todayImageId = SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(
+                    mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID));
+            WeatherIconCache.prewarmInBackground(mContext, new int[]{todayImageId}, mTodayIconSize);
+        }
+
+        int[] weatherImageIds = new int[mCursor.getCount()];
+        int position = 0;
+        do {
+            weatherImageIds[position++] = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(
+                    mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID));
+        } while (mCursor.moveToNext());
+        WeatherIconCache.prewarmInBackground(mContext, weatherImageIds, mListIconSize);
+    }
+
     /**
      * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
      * a cache of the child views for a forecast item. It's also a convenient place to set an
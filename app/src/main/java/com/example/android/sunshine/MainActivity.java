@@ -35,18 +35,15 @@ import android.widget.ProgressBar;
 import com.example.android.sunshine.common.data.SunshinePreferences;
 import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.common.utilities.LogHelper;
+import com.example.android.sunshine.sync.SunshineSyncScheduler;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.Wearable;
 
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
-        ForecastAdapter.ForecastAdapterOnClickHandler, GoogleApiClient.ConnectionCallbacks, DataApi.DataListener, GoogleApiClient.OnConnectionFailedListener {
+        ForecastAdapter.ForecastAdapterOnClickHandler, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
 
     private static final String TAG = LogHelper.LOG_TAG(MainActivity.class);
 
@@ -176,13 +173,8 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     protected void onResume() {
         super.onResume();
-        wearableNotifier = WearableNotifier.createWithApiClient(googleApiClient);
-    }
-
-    @Override
-    protected void onPause() {
-        super.onPause();
-        Wearable.DataApi.removeListener(googleApiClient, this);
+        SunshineSyncScheduler.recordAppOpened(this);
+        wearableNotifier = WearableNotifier.createWithApiClient(this, googleApiClient);
     }
 
     /**
@@ -270,7 +262,8 @@ public class MainActivity extends AppCompatActivity implements
             showWeatherDataView();
 
             if (wearableNotifier != null) {
-                wearableNotifier.notifyFromWeatherCursorData(data);
+                // nobody is looking at the watch, it can get the forecast whenever convenient
+                wearableNotifier.notifyFromWeatherCursorData(data, false);
             }
         }
     }
@@ -377,7 +370,6 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onConnected(Bundle bundle) {
         Log.d(TAG, "Google-Api Client connected.");
-        Wearable.DataApi.addListener(googleApiClient, this);
     }
 
     @Override
@@ -389,25 +381,4 @@ public class MainActivity extends AppCompatActivity implements
     public void onConnectionFailed(ConnectionResult connectionResult) {
         Log.w(TAG, "Connection to Google-Api Client failed: '" + connectionResult.getErrorMessage() + "'.");
     }
-
-    @Override
-    public void onDataChanged(DataEventBuffer dataEventBuffer) {
-        Log.d(TAG, "Received data changed event.");
-        for (DataEvent currentEvent : dataEventBuffer) {
-            if (currentEvent.getType() == DataEvent.TYPE_CHANGED) {
-                DataItem item = currentEvent.getDataItem();
-                if (item.getUri().getEncodedPath().equals("/weather-update")) {
-                    Log.d(TAG, "Handling weather-update event.");
-                    String[] projection = {
-                            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-                            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-                            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-                            WeatherContract.WeatherEntry.COLUMN_DATE
-                    };
-                    Cursor weatherCursor = getContentResolver().query(WeatherContract.WeatherEntry.CONTENT_URI, projection, WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(), null, null);
-                    wearableNotifier.notifyFromWeatherCursorData(weatherCursor);
-                }
-            }
-        }
-    }
 }
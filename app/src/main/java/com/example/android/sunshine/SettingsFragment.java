@@ -24,6 +24,7 @@ import android.support.v7.preference.Preference;
 import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
+import com.example.android.sunshine.common.data.ResponseValidators;
 import com.example.android.sunshine.common.data.SunshinePreferences;
 import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
@@ -94,10 +95,20 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         Activity activity = getActivity();
 
+        // the sync and the lists read the preferences from a snapshot. its own listener may not
+        // have been called yet, so bring it up to date before anything reads the new value
+        SunshinePreferences.refreshSnapshot(activity);
+
         if (key.equals(getString(R.string.pref_location_key))) {
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SunshinePreferences.resetLocationCoordinates(activity);
+            // validators are kept per URL, not per stored forecast. Going back to a location
+            // must not be answered with a 304 for rows another sync may have replaced since
+            ResponseValidators.clearAll(activity);
+            // the weather URIs follow the preferred location, so any forecast we have stored for
+            // the new location shows up right away. The sync brings it up to date.
+            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
             SunshineSyncUtils.startImmediateSync(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
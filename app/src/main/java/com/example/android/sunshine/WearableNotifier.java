@@ -1,14 +1,20 @@
 package com.example.android.sunshine;
 
+import android.content.Context;
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.FragmentActivity;
 import android.util.Log;
 
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
+import com.example.android.sunshine.common.data.SunshinePreferences;
 import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.common.utilities.LogHelper;
+import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -17,6 +23,12 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 
 /**
  * Created by Jan-2 on 27.12.2016.
@@ -25,52 +37,276 @@ import com.google.android.gms.wearable.Wearable;
 public class WearableNotifier {
     private static final String TAG = LogHelper.LOG_TAG(WearableNotifier.class);
 
+    /* How long a push waits for the Data Layer, each for connecting and for the put */
+    private static final long PUSH_TIMEOUT_SECONDS = 30;
+
+    /*
+     * An unchanged forecast is sent again once its sync time is newer than the one the watch got
+     * by the maximum forecast age divided by this, so the watch learns it is still current long
+     * before it would find it stale.
+     */
+    private static final int SYNC_TIME_REFRESH_DIVISOR = 2;
+
+    /* The columns of the forecast the watch gets */
+    private static final String[] WEARABLE_FORECAST_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP
+    };
+
+    /*
+     * The forecast that was last handed to the Data Layer and the time it was synced, shared by
+     * every notifier of the process. Putting the same forecast again wouldn't change the DataItem,
+     * it would only wake up the Data Layer on both devices for nothing.
+     */
+    private static final Object sLastSentLock = new Object();
+    private static byte[] sLastSentForecast;
+    private static long sLastSentSyncTime;
+
+    /* Runs the pushes of pushForecastInBackground, created when it is first needed */
+    private static ExecutorService sPushExecutor;
+
+    private final Context context;
     private final GoogleApiClient apiClient;
 
-    public static WearableNotifier createWithApiClient(GoogleApiClient apiClient) {
-        return new WearableNotifier(apiClient);
+    public static WearableNotifier createWithApiClient(Context context, GoogleApiClient apiClient) {
+        return new WearableNotifier(context, apiClient);
     }
 
-    private WearableNotifier(GoogleApiClient apiClient) {
+    private WearableNotifier(Context context, GoogleApiClient apiClient) {
+        this.context = context.getApplicationContext();
         this.apiClient = apiClient;
     }
 
-    public void notifyFromWeatherCursorData(Cursor data) {
+    /**
+     * Sends the forecast from today on to the wearable. The cursor must contain the date,
+     * weather id, min and max temperature columns of the weather table, sorted by date.
+     *
+     * @param data   The forecast
+     * @param urgent Whether somebody is waiting for the forecast on the watch, see
+     *               {@link #notifyFromForecast(ForecastBatch, boolean)}
+     */
+    public void notifyFromWeatherCursorData(Cursor data, boolean urgent) {
         if (shouldNotify(data)) {
-            int dateIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            int minTempIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
-            int maxTempIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
-            int weatherIdIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            notifyFromForecast(readForecast(data), urgent);
+        }
+    }
 
-            PutDataRequest dataRequest = createDataRequest(
+    /**
+     * Reads the forecast from today on out of the ContentProvider, the way the watch gets it.
+     *
+     * @param context Used to access the ContentResolver
+     * @return The forecast, or null if there's none from today on
+     */
+    static ForecastBatch queryForecast(Context context) {
+        // the whole upcoming forecast goes to the watch, in order of the days
+        Cursor weatherCursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WEARABLE_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (weatherCursor == null) {
+            return null;
+        }
+
+        try {
+            return weatherCursor.moveToFirst() ? readForecast(weatherCursor) : null;
+        } finally {
+            weatherCursor.close();
+        }
+    }
+
+    /**
+     * Reads the forecast out of a cursor that contains the date, weather id, min and max
+     * temperature columns of the weather table, sorted by date.
+     *
+     * @param data The forecast, positioned on its first day
+     * @return The forecast, the columns the watch doesn't need are 0
+     */
+    static ForecastBatch readForecast(Cursor data) {
+        int dateIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+        int minTempIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        int maxTempIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        int weatherIdIndex = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+
+        ForecastBatch forecast = new ForecastBatch(data.getCount());
+        do {
+            forecast.addDay(
                     data.getLong(dateIndex),
-                    data.getFloat(minTempIndex),
-                    data.getFloat(maxTempIndex),
-                    data.getInt(weatherIdIndex)
-            );
+                    data.getInt(weatherIdIndex),
+                    data.getDouble(minTempIndex),
+                    data.getDouble(maxTempIndex),
+                    0, 0, 0, 0);
+        } while (data.moveToNext());
+        return forecast;
+    }
+
+    /**
+     * Sends the forecast from today on to the wearable, all days packed into a single DataItem.
+     * The watch decodes it once and can move on to the next day by itself, without asking the
+     * phone again.
+     * <p>
+     * Along with the forecast goes the time it was last synced. Unless it is urgent, nothing is
+     * sent if the watch already got the very same forecast, synced not long before.
+     *
+     * @param forecast The forecast, for example as it has just been synced
+     * @param urgent   Whether somebody is waiting for the forecast on the watch. Urgent items are
+     *                 delivered right away, the others whenever the Data Layer syncs next, which
+     *                 lets both devices sleep a while longer.
+     */
+    public void notifyFromForecast(ForecastBatch forecast, boolean urgent) {
+        if (apiClient == null) {
+            return;
+        }
+
+        long syncTime = SunshinePreferences.getLastSyncTimeInMillis(context);
+        final byte[] encodedForecast = encodeIfChanged(context, forecast, syncTime, urgent);
+        if (encodedForecast == null) {
+            return;
+        }
+
+        PutDataRequest dataRequest = createDataRequest(encodedForecast, syncTime, urgent);
+
+        Wearable.DataApi.putDataItem(apiClient, dataRequest).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+            @Override
+            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+                Log.d(TAG, "Wearable request result: " + dataItemResult.getStatus().getStatusMessage());
+                if (!dataItemResult.getStatus().isSuccess()) {
+                    Log.w(TAG, "Failed to send wearable request data.");
+                    forgetLastSent(encodedForecast);
+                }
+            }
+        });
+    }
+
+    /**
+     * Pushes the forecast from today on to the wearable, like
+     * {@link #notifyFromForecast(ForecastBatch, boolean)} does, and waits until it has been
+     * handed to the Data Layer. For background threads that have no connected GoogleApiClient,
+     * like the sync right after it stored a new forecast. Never call this on the main thread.
+     *
+     * @param context  Used to connect to the Data Layer
+     * @param forecast The forecast
+     * @param urgent   Whether somebody is waiting for the forecast on the watch
+     */
+    public static void pushForecast(Context context, ForecastBatch forecast, boolean urgent) {
+        long syncTime = SunshinePreferences.getLastSyncTimeInMillis(context);
+        byte[] encodedForecast = encodeIfChanged(context, forecast, syncTime, urgent);
+        if (encodedForecast == null) {
+            return;
+        }
+
+        GoogleApiClient apiClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
 
-            Wearable.DataApi.putDataItem(apiClient, dataRequest).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+        ConnectionResult connectionResult =
+                apiClient.blockingConnect(PUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+            Log.w(TAG, "Could not connect to push the forecast: '" + connectionResult.getErrorMessage() + "'.");
+            forgetLastSent(encodedForecast);
+            return;
+        }
+
+        try {
+            DataApi.DataItemResult dataItemResult = Wearable.DataApi
+                    .putDataItem(apiClient, createDataRequest(encodedForecast, syncTime, urgent))
+                    .await(PUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Log.d(TAG, "Wearable push result: " + dataItemResult.getStatus().getStatusMessage());
+            if (!dataItemResult.getStatus().isSuccess()) {
+                Log.w(TAG, "Failed to push the forecast to the wearable.");
+                forgetLastSent(encodedForecast);
+            }
+        } finally {
+            apiClient.disconnect();
+        }
+    }
+
+    /**
+     * Pushes the stored forecast to the wearable on a background thread of its own, see
+     * {@link #pushForecast(Context, ForecastBatch, boolean)}. A push can wait for the Data Layer
+     * for up to a minute, the sync hands the push over here so it doesn't have to wait too.
+     *
+     * @param context Used to read the forecast and to connect to the Data Layer
+     * @param urgent  Whether somebody is waiting for the forecast on the watch
+     */
+    public static void pushForecastInBackground(Context context, final boolean urgent) {
+        final Context appContext = context.getApplicationContext();
+        getPushExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ForecastBatch forecast = queryForecast(appContext);
+                if (forecast != null) {
+                    pushForecast(appContext, forecast, urgent);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getPushExecutor() {
+        if (sPushExecutor == null) {
+            sPushExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
                 @Override
-                public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                    Log.d(TAG, "Wearable request result: " + dataItemResult.getStatus().getStatusMessage());
-                    if (!dataItemResult.getStatus().isSuccess()) {
-                        Log.w(TAG, "Failed to send wearable request data.");
-                    }
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "WearableNotifier");
                 }
             });
         }
+        return sPushExecutor;
+    }
+
+    /*
+     * Encodes the forecast from today on, or returns null if there's nothing to send because the
+     * forecast is over or the very same one, synced not long before, has been sent already.
+     * Urgent forecasts answer a watch that asked for one, so they are always sent: the watch may
+     * have lost what it got.
+     */
+    private static byte[] encodeIfChanged(Context context, ForecastBatch forecast, long syncTime,
+                                          boolean urgent) {
+        int today = forecast.findFirstDayFrom(SunshineDateUtils.getNormalizedUtcDateForToday());
+        if (today == -1) {
+            return null;
+        }
+
+        byte[] encodedForecast = ForecastCodec.encode(forecast, today);
+        long refreshMillis = ForecastCodec.getMaxForecastAgeMillis(context) / SYNC_TIME_REFRESH_DIVISOR;
+        synchronized (sLastSentLock) {
+            if (!urgent && Arrays.equals(encodedForecast, sLastSentForecast)
+                    && syncTime - sLastSentSyncTime < refreshMillis) {
+                Log.d(TAG, "Forecast didn't change, not sending it to the wearable.");
+                return null;
+            }
+            sLastSentForecast = encodedForecast;
+            sLastSentSyncTime = syncTime;
+        }
+        return encodedForecast;
     }
 
-    private static PutDataRequest createDataRequest(final long date, final float minTemp, final float maxTemp, final int weatherId) {
-        PutDataMapRequest map = PutDataMapRequest.create("/weather");
-        map.getDataMap().putLong(WeatherContract.WeatherEntry.COLUMN_DATE, date);
-        map.getDataMap().putFloat(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, minTemp);
-        map.getDataMap().putFloat(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
-        map.getDataMap().putInt(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    /* Makes sure a forecast that didn't make it into the Data Layer is sent again next time */
+    private static void forgetLastSent(byte[] encodedForecast) {
+        synchronized (sLastSentLock) {
+            if (sLastSentForecast == encodedForecast) {
+                sLastSentForecast = null;
+            }
+        }
+    }
 
-        // for debugging purposes add a seed so that the onChanged() method will be called every time
-        map.getDataMap().putLong("seed", System.currentTimeMillis());
-        map = map.setUrgent();
+    private static PutDataRequest createDataRequest(final byte[] encodedForecast, long syncTime,
+                                                    boolean urgent) {
+        PutDataMapRequest map = PutDataMapRequest.create(ForecastCodec.PATH_FORECAST);
+        map.getDataMap().putByteArray(ForecastCodec.KEY_FORECAST, encodedForecast);
+        map.getDataMap().putLong(ForecastCodec.KEY_SYNCED_AT, syncTime);
+        if (urgent) {
+            map = map.setUrgent();
+        }
         return map.asPutDataRequest();
     }
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.util.Log;
+
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.utilities.LogHelper;
+import com.example.android.sunshine.sync.SunshineSyncCoordinator;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.WearableListenerService;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Answers the watch when it asks for the forecast. The sync pushes every new forecast to the
+ * watch by itself, so the watch only asks when what it has is getting old, for example because
+ * the phone was out of reach. This service answers even if Sunshine isn't running on the phone.
+ * <p>
+ * If the phone's own forecast would be stale on the watch too, or there is none, it is synced
+ * first. Answering with it as it is would leave the watch asking again and again.
+ */
+public class WearableRequestService extends WearableListenerService {
+
+    private static final String TAG = LogHelper.LOG_TAG(WearableRequestService.class);
+
+    /* How long the answer waits for a sync, the watch asks again later if it takes longer */
+    private static final long SYNC_TIMEOUT_SECONDS = 60;
+
+    @Override
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (messageEvent.getPath().equals(ForecastCodec.PATH_FORECAST_REQUEST)) {
+            Log.d(TAG, "Handling weather-update message.");
+            sendForecast();
+        }
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEventBuffer) {
+        for (DataEvent event : dataEventBuffer) {
+            // watches that don't send messages yet ask for the weather with a DataItem
+            if (event.getType() == DataEvent.TYPE_CHANGED
+                    && event.getDataItem().getUri().getEncodedPath()
+                    .equals(ForecastCodec.PATH_FORECAST_REQUEST)) {
+                Log.d(TAG, "Handling weather-update event.");
+                sendForecast();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the upcoming forecast to the watch, syncing it first if it is stale. Somebody is
+     * looking at the watch right now, so it is sent urgently. Runs on the background thread of
+     * the listener service.
+     */
+    private void sendForecast() {
+        ForecastBatch forecast = WearableNotifier.queryForecast(this);
+
+        long syncAge = System.currentTimeMillis() - SunshinePreferences.getLastSyncTimeInMillis(this);
+        if (forecast == null || syncAge >= ForecastCodec.getMaxForecastAgeMillis(this)) {
+            Log.d(TAG, "Forecast is stale, syncing before answering the watch.");
+            Future<Void> sync = SunshineSyncCoordinator.getInstance(this).requestSync();
+            try {
+                sync.get(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Could not sync the forecast for the watch.", e);
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Syncing the forecast for the watch took too long.", e);
+                // withdraw the request, so whoever else waits for the sync can still cancel it
+                sync.cancel(false);
+            } catch (InterruptedException e) {
+                sync.cancel(false);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            forecast = WearableNotifier.queryForecast(this);
+        }
+
+        if (forecast != null) {
+            WearableNotifier.pushForecast(this, forecast, true);
+        }
+    }
+}
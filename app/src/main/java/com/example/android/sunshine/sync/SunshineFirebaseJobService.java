@@ -15,18 +15,21 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.Context;
-import android.os.AsyncTask;
-
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    /* The syncs that are running, by the tag of their Job. Guarded by itself. */
+    private final Map<String, SyncJob> mRunningJobs = new HashMap<>();
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -34,35 +37,27 @@ public class SunshineFirebaseJobService extends JobService {
      *
      * This is called by the Job Dispatcher to tell us we should start our job. Keep in mind this
      * method is run on the application's main thread, so we need to offload work to a background
-     * thread.
+     * thread. The sync is requested from {@link SunshineSyncCoordinator}, so a Job that comes due
+     * while an immediate sync is running, or right after one, shares that sync.
      *
      * @return whether there is more work remaining.
      */
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
+        SyncJob syncJob = new SyncJob(jobParameters);
+        synchronized (mRunningJobs) {
+            mRunningJobs.put(jobParameters.getTag(), syncJob);
+        }
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
-
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
-            }
-        };
-
-        mFetchWeatherTask.execute();
+        syncJob.start();
         return true;
     }
 
     /**
      * Called when the scheduling engine has decided to interrupt the execution of a running job,
      * most likely because the runtime constraints associated with the job are no longer satisfied.
+     * The Job's request is withdrawn. If no one else waits for the sync, it is cancelled, which
+     * closes its connections and rolls back the forecasts that haven't been committed yet.
      *
      * @return whether the job should be retried
      * @see Job.Builder#setRetryStrategy(RetryStrategy)
@@ -70,9 +65,62 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        SyncJob syncJob;
+        synchronized (mRunningJobs) {
+            syncJob = mRunningJobs.remove(jobParameters.getTag());
+        }
+
+        if (syncJob != null) {
+            syncJob.stop();
         }
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * The sync of a single Job. Finishes its Job at most once, when the sync is done, and not at
+     * all if the Job was stopped first: the Job Dispatcher already considers a stopped Job done.
+     */
+    private final class SyncJob implements Runnable {
+
+        private final JobParameters mJobParameters;
+
+        private final AtomicBoolean mFinished = new AtomicBoolean();
+
+        /* The sync the Job requested, null until start returns */
+        private volatile Future<Void> mSync;
+
+        SyncJob(JobParameters jobParameters) {
+            mJobParameters = jobParameters;
+        }
+
+        void start() {
+            mSync = SunshineSyncCoordinator.getInstance(getApplicationContext()).requestSync(this);
+        }
+
+        /* Called by the coordinator once the sync is done */
+        @Override
+        public void run() {
+            finish();
+        }
+
+        private void finish() {
+            if (!mFinished.compareAndSet(false, true)) {
+                return;
+            }
+
+            synchronized (mRunningJobs) {
+                if (mRunningJobs.get(mJobParameters.getTag()) == this) {
+                    mRunningJobs.remove(mJobParameters.getTag());
+                }
+            }
+            jobFinished(mJobParameters, false);
+        }
+
+        void stop() {
+            Future<Void> sync = mSync;
+            if (mFinished.compareAndSet(false, true) && sync != null) {
+                sync.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.util.Log;
+
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.utilities.LogHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the syncs that are asked for at about the same time. Sunshine asks for one when it finds
+ * no forecast on start up, when the user picks another location, when the watch asks for a
+ * forecast the phone doesn't have and when the periodic Job runs, and these often come in bursts.
+ * <p>
+ * A request that comes in while a sync is queued or running gets the Future of that sync instead
+ * of starting another one. So does a request that comes in shortly after a sync finished, the
+ * forecast it brought is as fresh as it gets. Only syncs that were started for the location the
+ * user prefers right now are joined, a request for a location the user just picked always gets a
+ * sync of its own.
+ * <p>
+ * Cancelling the Future of a sync only withdraws the request. The sync itself is cancelled once
+ * every request that joined it has been withdrawn.
+ */
+public final class SunshineSyncCoordinator {
+
+    private static final String TAG = LogHelper.LOG_TAG(SunshineSyncCoordinator.class);
+
+    /* Requests this soon after a sync finished get that sync's result */
+    private static final long DEBOUNCE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static SunshineSyncCoordinator sInstance;
+
+    private final Context mContext;
+
+    private final SyncRunner mRunner;
+
+    private final long mDebounceMillis;
+
+    /* The sync that was started last. Guarded by this. */
+    private SyncRun mLatestRun;
+
+    /**
+     * Runs the syncs of the coordinator. Tests replace it with syncs they control.
+     */
+    interface SyncRunner {
+
+        /**
+         * Runs a whole sync on a background thread, after the whole syncs before it.
+         *
+         * @param syncRun The sync, calls {@link #sync(CancellationSignal)}
+         */
+        void execute(Runnable syncRun);
+
+        /**
+         * Syncs the weather of every saved location and returns once it is done.
+         *
+         * @param signal Cancels the sync
+         */
+        void sync(CancellationSignal signal);
+
+        /**
+         * Cancels a sync, off the calling thread.
+         *
+         * @param signal The signal the sync was started with
+         */
+        void cancel(CancellationSignal signal);
+    }
+
+    SunshineSyncCoordinator(Context context, SyncRunner runner, long debounceMillis) {
+        mContext = context.getApplicationContext();
+        mRunner = runner;
+        mDebounceMillis = debounceMillis;
+    }
+
+    /**
+     * Returns the process wide sync coordinator.
+     *
+     * @param context Used to access the preferences and to run the sync
+     * @return The sync coordinator
+     */
+    public static synchronized SunshineSyncCoordinator getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new SunshineSyncCoordinator(appContext, new SyncRunner() {
+                @Override
+                public void execute(Runnable syncRun) {
+                    SunshineSyncEngine.getInstance(appContext).execute(syncRun);
+                }
+
+                @Override
+                public void sync(CancellationSignal signal) {
+                    SunshineSyncTask.syncWeather(appContext, signal);
+                }
+
+                @Override
+                public void cancel(CancellationSignal signal) {
+                    SunshineSyncEngine.getInstance(appContext).cancel(signal);
+                }
+            }, DEBOUNCE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Syncs the weather of every saved location now, unless a sync that serves the request just
+     * as well is running or has just finished.
+     *
+     * @return A Future that is done once the sync is
+     */
+    public Future<Void> requestSync() {
+        return requestSync(null);
+    }
+
+    /**
+     * Same as {@link #requestSync()}, but also tells when the sync is done, without anyone
+     * waiting for it.
+     *
+     * @param onDone Run once the sync is done or cancelled, on whatever thread finished it. Run
+     *               right away if the joined sync is done already. May be null.
+     * @return A Future that is done once the sync is
+     */
+    public Future<Void> requestSync(Runnable onDone) {
+        SyncRun run;
+        boolean done;
+        synchronized (this) {
+            String locationSetting = SunshinePreferences.getPreferredWeatherLocation(mContext);
+
+            if (mLatestRun != null && mLatestRun.canBeJoined(locationSetting)) {
+                Log.d(TAG, "Joining the sync that is " + (mLatestRun.isDone() ? "just done" : "running"));
+            } else {
+                mLatestRun = new SyncRun(locationSetting, new CancellationSignal());
+                mRunner.execute(mLatestRun);
+            }
+
+            run = mLatestRun;
+            done = run.join(onDone);
+        }
+
+        if (done && onDone != null) {
+            onDone.run();
+        }
+        return run;
+    }
+
+    /**
+     * A sync of every saved location, started when the user preferred a certain location.
+     */
+    private final class SyncRun extends FutureTask<Void> {
+
+        private final String mLocationSetting;
+
+        private final CancellationSignal mSignal;
+
+        /* When the sync was done, as elapsed realtime. 0 while it is running. */
+        private volatile long mFinishedAt;
+
+        /* The requests that haven't been withdrawn. Guarded by the coordinator. */
+        private int mRequests;
+
+        /* Run once the sync is done. Guarded by the coordinator. */
+        private final List<Runnable> mOnDone = new ArrayList<>();
+
+        SyncRun(String locationSetting, final CancellationSignal signal) {
+            super(new Runnable() {
+                @Override
+                public void run() {
+                    mRunner.sync(signal);
+                }
+            }, null);
+            mLocationSetting = locationSetting;
+            mSignal = signal;
+        }
+
+        /* Must be called while holding the coordinator. Returns whether the sync is done. */
+        boolean join(Runnable onDone) {
+            mRequests++;
+            if (isDone()) {
+                return true;
+            }
+            if (onDone != null) {
+                mOnDone.add(onDone);
+            }
+            return false;
+        }
+
+        /**
+         * Withdraws one request. The sync is cancelled once no request is left.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (SunshineSyncCoordinator.this) {
+                if (mRequests > 0 && --mRequests > 0) {
+                    return false;
+                }
+            }
+
+            boolean cancelled = super.cancel(false);
+            if (cancelled) {
+                mRunner.cancel(mSignal);
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> onDone;
+            synchronized (SunshineSyncCoordinator.this) {
+                mFinishedAt = SystemClock.elapsedRealtime();
+                onDone = new ArrayList<>(mOnDone);
+                mOnDone.clear();
+            }
+
+            for (Runnable runnable : onDone) {
+                runnable.run();
+            }
+        }
+
+        boolean canBeJoined(String locationSetting) {
+            if (!mLocationSetting.equals(locationSetting) || isCancelled()) {
+                return false;
+            }
+
+            long finishedAt = mFinishedAt;
+            return finishedAt == 0
+                    || SystemClock.elapsedRealtime() - finishedAt < mDebounceMillis;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Process;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
+
+import com.example.android.sunshine.common.data.SunshinePreferences;
+import com.example.android.sunshine.common.data.WeatherContract;
+import com.example.android.sunshine.common.utilities.LogHelper;
+import com.example.android.sunshine.utilities.TransferStats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the syncs of the individual locations. Instead of syncing one location after the other
+ * under a single lock, every location is synced as a task of its own on a small thread pool, so a
+ * slow response for one location doesn't hold up the others. Each location commits its forecast
+ * in its own transaction as soon as its response is parsed.
+ * <p>
+ * Asking for a location that is already being synced doesn't start a second sync, the caller
+ * gets the Future of the sync that is already running instead.
+ * <p>
+ * Whole syncs, the ones that wait for all the locations, run on a thread of their own with
+ * {@link #execute(Runnable)}, so they neither queue up behind unrelated work nor block the
+ * threads the locations need. Cancelling a sync closes its connections and rolls back the
+ * forecasts that haven't been committed yet.
+ */
+public final class SunshineSyncEngine {
+
+    private static final String TAG = LogHelper.LOG_TAG(SunshineSyncEngine.class);
+
+    /*
+     * The number of locations fetched at the same time. Enough to hide the latency of the
+     * requests, without opening more connections than a phone on a mobile network should.
+     */
+    private static final int MAX_PARALLEL_SYNCS = 3;
+
+    /* Idle threads of the pool are stopped after this many seconds */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static SunshineSyncEngine sInstance;
+
+    private final Context mContext;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    /* Runs the whole syncs, one at a time, and the cancellations */
+    private final ThreadPoolExecutor mSyncRunExecutor;
+    private final ThreadPoolExecutor mCancelExecutor;
+
+    /* The syncs that haven't finished yet, by location setting. Guarded by itself. */
+    private final Map<String, LocationSync> mInFlightSyncs = new HashMap<>();
+
+    private SunshineSyncEngine(Context context) {
+        mContext = context.getApplicationContext();
+        mExecutor = new ThreadPoolExecutor(
+                MAX_PARALLEL_SYNCS,
+                MAX_PARALLEL_SYNCS,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new SyncThreadFactory("SunshineSync #"));
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        mSyncRunExecutor = newSingleThreadExecutor("SunshineSyncRun #");
+        mCancelExecutor = newSingleThreadExecutor("SunshineSyncCancel #");
+    }
+
+    private static ThreadPoolExecutor newSingleThreadExecutor(String threadName) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                1,
+                1,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new SyncThreadFactory(threadName));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the process wide sync engine.
+     *
+     * @param context Used to access the ContentResolver and the preferences
+     * @return The sync engine
+     */
+    public static synchronized SunshineSyncEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SunshineSyncEngine(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts syncing the forecast of a location, unless a sync of that location is already
+     * running.
+     *
+     * @param locationSetting The location as the user entered it
+     * @return A Future that yields the number of rows of weather that changed
+     */
+    public Future<Integer> requestSync(String locationSetting) {
+        return startSync(locationSetting);
+    }
+
+    private LocationSync startSync(String locationSetting) {
+        synchronized (mInFlightSyncs) {
+            LocationSync inFlightSync = mInFlightSyncs.get(locationSetting);
+            if (inFlightSync != null) {
+                Log.d(TAG, "Joining the running sync of " + locationSetting);
+                return inFlightSync;
+            }
+
+            LocationSync sync = new LocationSync(locationSetting, new CancellationSignal(), new TransferStats());
+            mInFlightSyncs.put(locationSetting, sync);
+            mExecutor.execute(sync);
+            return sync;
+        }
+    }
+
+    /**
+     * Starts syncing the forecast of every saved location. The location the user prefers is
+     * always synced, even if it hasn't been saved yet, and it is started first.
+     *
+     * @return The Futures of the syncs, the one of the preferred location first
+     */
+    public List<Future<Integer>> requestSyncOfAllLocations() {
+        return new ArrayList<Future<Integer>>(startSyncOfAllLocations());
+    }
+
+    private List<LocationSync> startSyncOfAllLocations() {
+        Set<String> locationSettings = new LinkedHashSet<>();
+        locationSettings.add(SunshinePreferences.getPreferredWeatherLocation(mContext));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    locationSettings.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        List<LocationSync> syncs = new ArrayList<>(locationSettings.size());
+        for (String locationSetting : locationSettings) {
+            syncs.add(startSync(locationSetting));
+        }
+        return syncs;
+    }
+
+    /**
+     * Syncs the forecast of every saved location and blocks until all of them are done. Meant to
+     * be called from the background threads of the sync services.
+     */
+    public void syncAllLocations() {
+        syncAllLocations(null);
+    }
+
+    /**
+     * Same as {@link #syncAllLocations()}, but can be cancelled. Cancelling the signal cancels
+     * the syncs of the locations, including the ones this call joined, and returns without
+     * waiting for them to wind down. Once all locations are done, logs how many bytes the whole
+     * sync transferred and how many they inflated to. Don't cancel the signal on the main thread, use
+     * {@link #cancel(CancellationSignal)}.
+     *
+     * @param signal Cancels the syncs, may be null
+     */
+    public void syncAllLocations(CancellationSignal signal) {
+        if (signal != null && signal.isCanceled()) {
+            return;
+        }
+
+        final List<LocationSync> syncs = startSyncOfAllLocations();
+        if (signal != null) {
+            signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    for (Future<Integer> sync : syncs) {
+                        sync.cancel(false);
+                    }
+                }
+            });
+        }
+
+        TransferStats transferStats = new TransferStats();
+        try {
+            for (LocationSync sync : syncs) {
+                try {
+                    sync.get();
+                    transferStats.add(sync.getTransferStats());
+                } catch (CancellationException e) {
+                    Log.d(TAG, "Sync of a location cancelled");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof OperationCanceledException) {
+                        Log.d(TAG, "Sync of a location cancelled");
+                    } else {
+                        Log.e(TAG, "Sync of a location failed", e.getCause());
+                    }
+                    transferStats.add(sync.getTransferStats());
+                } catch (InterruptedException e) {
+                    /*
+                     * Stop waiting, the syncs that have been started keep running and commit
+                     * their forecasts on their own.
+                     */
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            Log.d(TAG, "Sync transfer: " + transferStats);
+        } finally {
+            if (signal != null) {
+                signal.setOnCancelListener(null);
+            }
+        }
+    }
+
+    /**
+     * Runs a whole sync, one that waits for the syncs of the locations, on the engine's own
+     * thread. Whole syncs run one after the other.
+     *
+     * @param syncRun The sync, usually calls {@link #syncAllLocations(CancellationSignal)}
+     */
+    public void execute(Runnable syncRun) {
+        mSyncRunExecutor.execute(syncRun);
+    }
+
+    /**
+     * Cancels a sync on a background thread. Cancelling closes the connections of the sync,
+     * which counts as network access and must not happen on the main thread.
+     *
+     * @param signal The signal the sync was started with
+     */
+    public void cancel(final CancellationSignal signal) {
+        mCancelExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                signal.cancel();
+            }
+        });
+    }
+
+    /**
+     * The sync of a single location. Removes itself from the in-flight syncs once it is done, so
+     * the next request for the location starts a new sync. Cancelling it cancels its signal,
+     * which stops the sync even while it is blocked on the network.
+     */
+    private final class LocationSync extends FutureTask<Integer> {
+
+        private final String mLocationSetting;
+
+        private final CancellationSignal mSignal;
+
+        private final TransferStats mTransferStats;
+
+        LocationSync(final String locationSetting, final CancellationSignal signal,
+                     final TransferStats transferStats) {
+            super(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return SunshineSyncTask.syncLocation(mContext, locationSetting, transferStats, signal);
+                }
+            });
+            mLocationSetting = locationSetting;
+            mSignal = signal;
+            mTransferStats = transferStats;
+        }
+
+        /* The bytes the sync of the location transferred, shared by every whole sync joining it */
+        TransferStats getTransferStats() {
+            return mTransferStats;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                mSignal.cancel();
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (mInFlightSyncs) {
+                if (mInFlightSyncs.get(mLocationSetting) == this) {
+                    mInFlightSyncs.remove(mLocationSetting);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the threads of the pool. Syncs never run in the foreground, so their threads run
+     * at background priority to keep the UI responsive.
+     */
+    private static final class SyncThreadFactory implements ThreadFactory {
+
+        private final String mThreadName;
+
+        private final AtomicInteger mThreadCount = new AtomicInteger();
+
+        SyncThreadFactory(String threadName) {
+            mThreadName = threadName;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, mThreadName + mThreadCount.incrementAndGet());
+        }
+    }
+}
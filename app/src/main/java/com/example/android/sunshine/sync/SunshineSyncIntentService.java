@@ -17,19 +17,36 @@ package com.example.android.sunshine.sync;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.util.Log;
+
+import com.example.android.sunshine.common.utilities.LogHelper;
+
+import java.util.concurrent.ExecutionException;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
  * a service on a separate handler thread.
+ * <p>
+ * Every request goes through the {@link SunshineSyncCoordinator}, so a burst of requests results
+ * in a single sync. The service waits for the sync to be done, which keeps the process alive
+ * while it runs.
  */
 public class SunshineSyncIntentService extends IntentService {
 
+    private static final String TAG = LogHelper.LOG_TAG(SunshineSyncIntentService.class);
+
     public SunshineSyncIntentService() {
         super("SunshineSyncIntentService");
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SunshineSyncTask.syncWeather(this);
+        try {
+            SunshineSyncCoordinator.getInstance(this).requestSync().get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Immediate sync failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.example.android.sunshine.common.utilities.LogHelper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the interval of the periodic sync from what the syncs and the user have done so far,
+ * instead of syncing every 3 hours no matter what:
+ * <ul>
+ * <li>A forecast that changes with most syncs is synced more often, one that hardly ever
+ * changes less often.</li>
+ * <li>Every sync in a row that brought nothing new, because the server answered 304 or the
+ * forecast was the same, stretches the interval a bit more.</li>
+ * <li>Users who open Sunshine several times a day get fresher weather, users who haven't
+ * opened it for days get fewer syncs.</li>
+ * </ul>
+ * Only the syncs of the location the user prefers count, that's the forecast the user sees. The
+ * recurring Job is only scheduled again when the interval actually changes, since scheduling it
+ * restarts its window.
+ */
+public final class SunshineSyncScheduler {
+
+    private static final String TAG = LogHelper.LOG_TAG(SunshineSyncScheduler.class);
+
+    /* The outcomes of a sync, see recordSyncResult */
+    static final int RESULT_CHANGED = 0;
+    static final int RESULT_UNCHANGED = 1;
+    static final int RESULT_NOT_MODIFIED = 2;
+    static final int RESULT_FAILED = 3;
+
+    /*
+     * The interval of a forecast that changes with every other sync and an occasional user. The
+     * longest intervals outlast R.integer.max_forecast_age_minutes; a watch that finds its
+     * forecast stale asks for one, and WearableRequestService syncs before it answers.
+     */
+    private static final long BASE_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+    private static final long MIN_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final long MAX_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(12);
+
+    /* Intervals are rounded to this, so small changes of the statistics don't reschedule */
+    private static final long INTERVAL_STEP_SECONDS = TimeUnit.MINUTES.toSeconds(30);
+
+    /* How much a single sync moves the share of syncs that changed the forecast */
+    private static final float CHANGE_RATE_WEIGHT = 0.25f;
+    private static final float DEFAULT_CHANGE_RATE = 0.5f;
+
+    /* Syncs in a row without anything new that still stretch the interval */
+    private static final int MAX_COUNTED_UNCHANGED_SYNCS = 4;
+
+    /* How much a single opening moves the average time between openings */
+    private static final float OPEN_GAP_WEIGHT = 0.25f;
+
+    /* Openings closer together than this are the same visit */
+    private static final long SAME_VISIT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /* Users who open Sunshine at least this often are active, this rarely inactive */
+    private static final long ACTIVE_OPEN_GAP_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final long INACTIVE_OPEN_GAP_MILLIS = TimeUnit.DAYS.toMillis(3);
+
+    private static final String PREFS_NAME = "sync_scheduler";
+    private static final String KEY_CHANGE_RATE = "change_rate";
+    private static final String KEY_UNCHANGED_SYNCS = "unchanged_syncs";
+    private static final String KEY_LAST_OPENED = "last_opened";
+    private static final String KEY_MEAN_OPEN_GAP = "mean_open_gap";
+    private static final String KEY_SCHEDULED_INTERVAL = "scheduled_interval";
+
+    private SunshineSyncScheduler() {
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records the outcome of a sync of the preferred location.
+     *
+     * @param context Used to access the statistics
+     * @param result  One of RESULT_CHANGED, RESULT_UNCHANGED, RESULT_NOT_MODIFIED and
+     *                RESULT_FAILED. A failed sync says nothing about the forecast and is ignored.
+     */
+    static synchronized void recordSyncResult(@NonNull Context context, int result) {
+        if (result == RESULT_FAILED) {
+            return;
+        }
+
+        SharedPreferences preferences = getPreferences(context);
+        boolean changed = result == RESULT_CHANGED;
+
+        float changeRate = preferences.getFloat(KEY_CHANGE_RATE, DEFAULT_CHANGE_RATE);
+        changeRate += CHANGE_RATE_WEIGHT * ((changed ? 1f : 0f) - changeRate);
+
+        int unchangedSyncs = changed ? 0 : preferences.getInt(KEY_UNCHANGED_SYNCS, 0) + 1;
+
+        preferences.edit()
+                .putFloat(KEY_CHANGE_RATE, changeRate)
+                .putInt(KEY_UNCHANGED_SYNCS, Math.min(unchangedSyncs, MAX_COUNTED_UNCHANGED_SYNCS))
+                .apply();
+    }
+
+    /**
+     * Records that the user opened Sunshine and syncs more often if that made the user an active
+     * one.
+     *
+     * @param context Used to access the statistics and to schedule the sync
+     */
+    public static synchronized void recordAppOpened(@NonNull Context context) {
+        SharedPreferences preferences = getPreferences(context);
+        long now = System.currentTimeMillis();
+        long lastOpened = preferences.getLong(KEY_LAST_OPENED, 0);
+        long gap = now - lastOpened;
+
+        if (lastOpened > 0 && gap >= 0 && gap < SAME_VISIT_MILLIS) {
+            return;
+        }
+
+        SharedPreferences.Editor editor = preferences.edit().putLong(KEY_LAST_OPENED, now);
+        if (lastOpened > 0 && gap > 0) {
+            long meanOpenGap = preferences.getLong(KEY_MEAN_OPEN_GAP, gap);
+            meanOpenGap += (long) (OPEN_GAP_WEIGHT * (gap - meanOpenGap));
+            editor.putLong(KEY_MEAN_OPEN_GAP, meanOpenGap);
+        }
+        editor.apply();
+
+        scheduleSync(context, false);
+    }
+
+    /**
+     * Schedules the periodic sync with the interval the statistics call for.
+     *
+     * @param context Used to access the statistics and to schedule the sync
+     * @param force   Whether to schedule the sync even if its interval didn't change, for when
+     *                the Job may have been lost
+     */
+    static synchronized void scheduleSync(@NonNull Context context, boolean force) {
+        SharedPreferences preferences = getPreferences(context);
+
+        long now = System.currentTimeMillis();
+        long lastOpened = preferences.getLong(KEY_LAST_OPENED, 0);
+        int intervalSeconds = computeIntervalSeconds(
+                preferences.getFloat(KEY_CHANGE_RATE, DEFAULT_CHANGE_RATE),
+                preferences.getInt(KEY_UNCHANGED_SYNCS, 0),
+                preferences.getLong(KEY_MEAN_OPEN_GAP, 0),
+                lastOpened > 0 ? Math.max(0, now - lastOpened) : 0);
+
+        int scheduledIntervalSeconds = preferences.getInt(KEY_SCHEDULED_INTERVAL, 0);
+        if (!force && intervalSeconds == scheduledIntervalSeconds) {
+            return;
+        }
+
+        Log.d(TAG, "Scheduling sync every " + intervalSeconds + " seconds, was "
+                + scheduledIntervalSeconds);
+        SunshineSyncUtils.scheduleFirebaseJobDispatcherSync(context, intervalSeconds);
+        preferences.edit().putInt(KEY_SCHEDULED_INTERVAL, intervalSeconds).apply();
+    }
+
+    /**
+     * Computes the sync interval.
+     *
+     * @param changeRate        Share of the recent syncs that changed the forecast, from 0 to 1
+     * @param unchangedSyncs    Syncs in a row that brought nothing new
+     * @param meanOpenGapMillis Average time between the user's visits, 0 if unknown
+     * @param sinceOpenedMillis Time since the user's last visit, 0 if unknown
+     * @return The interval in seconds
+     */
+    static int computeIntervalSeconds(float changeRate, int unchangedSyncs,
+                                      long meanOpenGapMillis, long sinceOpenedMillis) {
+        /* From 2 for a forecast that never changes to 2/3 for one that changes with every sync */
+        double volatilityFactor = 1 / (0.5 + Math.max(0f, Math.min(1f, changeRate)));
+
+        /* Up to twice as long after a couple of syncs that brought nothing new */
+        double unchangedFactor = 1 + 0.25 * Math.min(unchangedSyncs, MAX_COUNTED_UNCHANGED_SYNCS);
+
+        double activityFactor = 1;
+        if (sinceOpenedMillis >= INACTIVE_OPEN_GAP_MILLIS
+                || meanOpenGapMillis >= INACTIVE_OPEN_GAP_MILLIS) {
+            activityFactor = 1.5;
+        } else if (meanOpenGapMillis > 0 && meanOpenGapMillis <= ACTIVE_OPEN_GAP_MILLIS) {
+            activityFactor = 0.75;
+        }
+
+        double interval = BASE_INTERVAL_SECONDS * volatilityFactor * unchangedFactor * activityFactor;
+        long steps = Math.round(interval / INTERVAL_STEP_SECONDS);
+        long intervalSeconds = steps * INTERVAL_STEP_SECONDS;
+        return (int) Math.max(MIN_INTERVAL_SECONDS, Math.min(MAX_INTERVAL_SECONDS, intervalSeconds));
+    }
+}
@@ -16,101 +16,335 @@
 package com.example.android.sunshine.sync;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.WearableNotifier;
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ResponseValidators;
 import com.example.android.sunshine.common.data.SunshinePreferences;
 import com.example.android.sunshine.common.data.WeatherContract;
+import com.example.android.sunshine.common.data.WeatherProvider;
+import com.example.android.sunshine.common.utilities.LogHelper;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.TransferStats;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = LogHelper.LOG_TAG(SunshineSyncTask.class);
+
+    /**
+     * Syncs the forecast of every saved location and waits until all of them are done. The
+     * locations are fetched in parallel by {@link SunshineSyncEngine}, which also merges this sync
+     * with any sync of the same location that is already running.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     */
+    public static void syncWeather(Context context) {
+        syncWeather(context, null);
+    }
+
     /**
-     * Performs the network request for updated weather, parses the JSON from that request, and
-     * inserts the new weather information into our ContentProvider. Will notify the user that new
-     * weather has been loaded if the user hasn't been notified of the weather within the last day
-     * AND they haven't disabled notifications in the preferences screen.
+     * Same as {@link #syncWeather(Context)}, but can be cancelled. Cancelling the signal closes
+     * the connections of the locations that are still being fetched and rolls back the forecasts
+     * that haven't been committed yet, then returns.
      *
      * @param context Used to access utility methods and the ContentResolver
+     * @param signal  Cancels the sync, may be null
      */
-    synchronized public static void syncWeather(Context context) {
+    public static void syncWeather(Context context, CancellationSignal signal) {
+        SunshineSyncEngine.getInstance(context).syncAllLocations(signal);
+
+        if (signal != null && signal.isCanceled()) {
+            return;
+        }
+
+        /* What the sync brought may call for syncing more or less often */
+        SunshineSyncScheduler.scheduleSync(context, false);
+    }
+
+    /**
+     * Performs the network request for updated weather of a single location, parses the JSON
+     * from that request, and replaces the location's forecast in our ContentProvider. If it is
+     * the location the user prefers, will notify the user that new weather has been loaded if the
+     * user hasn't been notified of the weather within the last day AND they haven't disabled
+     * notifications in the preferences screen.
+     * <p>
+     * Don't call this method directly, go through {@link SunshineSyncEngine} instead so that
+     * each location is synced only once at a time.
+     *
+     * @param context         Used to access utility methods and the ContentResolver
+     * @param locationSetting The location as the user entered it
+     * @param transferStats   Counts the bytes of the response, added up for the whole sync by
+     *                        {@link SunshineSyncEngine}
+     * @param signal          Cancels the sync, may be null
+     * @return The number of rows of weather that changed
+     * @throws OperationCanceledException If the signal was cancelled before the forecast was
+     *                                    committed
+     */
+    static int syncLocation(Context context, String locationSetting, TransferStats transferStats,
+                            CancellationSignal signal) {
+
+        /*
+         * The getUrl method will return the URL that we need to get the forecast JSON for the
+         * weather. It will decide whether to create a URL based off of the latitude and
+         * longitude or off of a simple location as a String.
+         */
+        URL weatherRequestUrl = NetworkUtils.getUrl(context, locationSetting);
+
+        /* Receives the coordinates the server returns for the location */
+        double[] cityCoordinates = new double[2];
 
         try {
-            /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
-             */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            ForecastBatch forecast;
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            if (OpenWeatherJsonUtils.isStreamingParserAvailable()) {
+                /*
+                 * Parse the JSON straight from the response stream. The request is conditional,
+                 * so if the forecast hasn't changed since our last sync there's nothing to parse
+                 * and nothing to write to the database.
+                 */
+                ForecastResponseHandler responseHandler =
+                        new ForecastResponseHandler(cityCoordinates);
+                forecast = NetworkUtils.getResponseFromHttpUrl(
+                        context,
+                        weatherRequestUrl,
+                        responseHandler,
+                        transferStats,
+                        signal);
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+                if (responseHandler.isNotModified()) {
+                    Log.d(TAG, "Forecast for " + locationSetting + " not modified since last sync.");
+                    recordSyncResult(context, locationSetting, SunshineSyncScheduler.RESULT_NOT_MODIFIED);
+                    if (locationSetting.equals(SunshinePreferences.getPreferredWeatherLocation(context))) {
+                        /*
+                         * The response carries no coordinates, but a location change reset
+                         * them. Take them from the location as it was stored with the forecast.
+                         */
+                        if (!restoreLocationDetails(context, locationSetting)) {
+                            ResponseValidators.clearValidators(context, weatherRequestUrl.toString());
+                        }
+                        onPreferredLocationSynced(context);
+                    }
+                    return 0;
+                }
+            } else {
+                /* Use the URL to retrieve the JSON */
+                String jsonWeatherResponse =
+                        NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl, signal);
+
+                /* Parse the JSON into a forecast */
+                forecast = OpenWeatherJsonUtils
+                        .getForecastFromJson(jsonWeatherResponse, cityCoordinates);
+            }
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
+             * In cases where our JSON contained an error code, getForecastFromJson would have
+             * returned null. We need to check for those cases here to prevent any
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
+            if (forecast == null || forecast.size() == 0) {
+                recordSyncResult(context, locationSetting, SunshineSyncScheduler.RESULT_FAILED);
+                return 0;
+            }
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            /* Get a handle on the ContentResolver to replace the data */
+            ContentResolver sunshineContentResolver = context.getContentResolver();
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+            /* Save the location, along with the coordinates the server returned for it */
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    locationSetting);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                    cityCoordinates[0]);
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+                    cityCoordinates[1]);
+            Uri locationUri = sunshineContentResolver.insert(
+                    WeatherContract.LocationEntry.CONTENT_URI,
+                    locationValues);
+            long locationId = ContentUris.parseId(locationUri);
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+            /*
+             * Replace the stored forecast of the location with the new one. This happens in a
+             * single transaction that only touches the days that actually changed, so the UI
+             * never sees an empty forecast and isn't notified at all if nothing changed. The
+             * forecast goes to the provider as it is, without being turned into ContentValues.
+             */
+            int rowsChanged = WeatherProvider.bulkInsertForecast(
+                    sunshineContentResolver,
+                    WeatherContract.LocationEntry.buildWeatherReplaceUri(locationId),
+                    forecast,
+                    signal);
 
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = SunshinePreferences
-                        .getEllapsedTimeSinceLastNotification(context);
+            /*
+             * Everything below only concerns the location the user prefers. The user may have
+             * picked another location while we were syncing this one, so check again.
+             */
+            if (!locationSetting.equals(SunshinePreferences.getPreferredWeatherLocation(context))) {
+                return rowsChanged;
+            }
 
-                boolean oneDayPassedSinceLastNotification = false;
+            SunshinePreferences.setLocationDetails(context, cityCoordinates[0], cityCoordinates[1]);
 
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
-                }
+            SunshineSyncScheduler.recordSyncResult(context, rowsChanged > 0
+                    ? SunshineSyncScheduler.RESULT_CHANGED
+                    : SunshineSyncScheduler.RESULT_UNCHANGED);
 
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
-                }
+            onPreferredLocationSynced(context);
+
+            if (rowsChanged == 0) {
+                Log.d(TAG, "Forecast unchanged, nothing to notify.");
+                return 0;
+            }
+
+            /*
+             * Finally, after we insert data into the ContentProvider, determine whether or not
+             * we should notify the user that the weather has been refreshed.
+             */
+            boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+
+            /*
+             * If the last notification was shown was more than 1 day ago, we want to send
+             * another notification to the user that the weather has been updated. Remember,
+             * it's important that you shouldn't spam your users with notifications.
+             */
+            long timeSinceLastNotification = SunshinePreferences
+                    .getEllapsedTimeSinceLastNotification(context);
+
+            boolean oneDayPassedSinceLastNotification = false;
+
+            if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+                oneDayPassedSinceLastNotification = true;
+            }
+
+            /*
+             * We only want to show the notification if the user wants them shown and we
+             * haven't shown a notification in the past day.
+             */
+            if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+                NotificationUtils.notifyUserOfNewWeather(context);
+            }
 
             /* If the code reaches this point, we have successfully performed our sync */
+            return rowsChanged;
+
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Sync of " + locationSetting + " cancelled");
 
+            /* Whatever has been fetched hasn't been stored, the next sync has to fetch it again */
+            if (weatherRequestUrl != null) {
+                ResponseValidators.clearValidators(context, weatherRequestUrl.toString());
             }
+            throw e;
 
         } catch (Exception e) {
             /* Server probably invalid */
             e.printStackTrace();
+
+            /*
+             * The response may have been fetched but not stored. Make sure the next sync
+             * downloads it again instead of being told that nothing has changed.
+             */
+            if (weatherRequestUrl != null) {
+                ResponseValidators.clearValidators(context, weatherRequestUrl.toString());
+            }
+            recordSyncResult(context, locationSetting, SunshineSyncScheduler.RESULT_FAILED);
+            return 0;
+        }
+    }
+
+    /**
+     * Saves the coordinates stored with a location as the details of the preferred location.
+     *
+     * @param context         Used to access the ContentResolver
+     * @param locationSetting The location to take the coordinates from
+     * @return false if the location or its coordinates aren't stored
+     */
+    private static boolean restoreLocationDetails(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{
+                        WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LONG},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return false;
+        }
+
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0) || cursor.isNull(1)) {
+                return false;
+            }
+            SunshinePreferences.setLocationDetails(context, cursor.getDouble(0), cursor.getDouble(1));
+            return true;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Remembers when the preferred location was synced and pushes its forecast to the watch. The
+     * watch doesn't poll the phone, it relies on getting every new forecast like this. A forecast
+     * that didn't change is pushed too, from time to time, so the watch learns it is still
+     * current. The push happens in the background, the sync is done once the forecast is stored.
+     */
+    private static void onPreferredLocationSynced(Context context) {
+        SunshinePreferences.saveLastSyncTime(context, System.currentTimeMillis());
+        WearableNotifier.pushForecastInBackground(context, false);
+    }
+
+    /* Only the location the user prefers counts for how often to sync */
+    private static void recordSyncResult(Context context, String locationSetting, int result) {
+        if (locationSetting.equals(SunshinePreferences.getPreferredWeatherLocation(context))) {
+            SunshineSyncScheduler.recordSyncResult(context, result);
+        }
+    }
+
+    /**
+     * Hands the body of the forecast response to the streaming JSON parser, so the response never
+     * has to be held in memory as a whole.
+     */
+    private static class ForecastResponseHandler
+            implements NetworkUtils.ResponseHandler<ForecastBatch> {
+
+        private final double[] mCityCoordinates;
+
+        private boolean mNotModified;
+
+        ForecastResponseHandler(double[] cityCoordinates) {
+            mCityCoordinates = cityCoordinates;
+        }
+
+        @Override
+        public ForecastBatch handleResponse(InputStream in, int contentLength)
+                throws IOException {
+            return OpenWeatherJsonUtils.getForecastFromStream(in, mCityCoordinates);
+        }
+
+        @Override
+        public ForecastBatch handleNotModified() {
+            mNotModified = true;
+            return null;
+        }
+
+        boolean isNotModified() {
+            return mNotModified;
         }
     }
-}
\ No newline at end of file
+}
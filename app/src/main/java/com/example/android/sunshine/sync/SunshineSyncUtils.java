@@ -30,17 +30,13 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
-import java.util.concurrent.TimeUnit;
-
 public class SunshineSyncUtils {
 
     /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-     * writing out a bunch of multiplication ourselves and risk making a silly mistake.
+     * The interval at which to sync with the weather is chosen by SunshineSyncScheduler. The
+     * window in which a sync may run is a third longer than the interval.
      */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final int SYNC_FLEXTIME_DIVISOR = 3;
 
     private static boolean sInitialized;
 
@@ -48,10 +44,15 @@ public class SunshineSyncUtils {
 
     /**
      * Schedules a repeating sync of Sunshine's weather data using FirebaseJobDispatcher.
-     * @param context Context used to create the GooglePlayDriver that powers the
-     *                FirebaseJobDispatcher
+     * Replaces the sync that is scheduled already. Use {@link SunshineSyncScheduler} to pick the
+     * interval rather than calling this directly.
+     *
+     * @param context         Context used to create the GooglePlayDriver that powers the
+     *                        FirebaseJobDispatcher
+     * @param intervalSeconds The time between two syncs in seconds
      */
-    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
+    static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context,
+                                                  int intervalSeconds) {
 
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
@@ -79,15 +80,16 @@ public class SunshineSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
-                 * Trigger's static executionWindow method is the start of the time frame when the
-                 * sync should be performed. The second argument is the latest point in time at
-                 * which the data should be synced. Please note that this end time is not
-                 * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
+                 * We want the weather data to be synced once the interval has passed, and at
+                 * most a third of the interval later. The first argument for Trigger's static
+                 * executionWindow method is the start of the time frame when the sync should be
+                 * performed. The second argument is the latest point in time at which the data
+                 * should be synced. Please note that this end time is not guaranteed, but is more
+                 * of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        intervalSeconds,
+                        intervalSeconds + intervalSeconds / SYNC_FLEXTIME_DIVISOR))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -118,9 +120,10 @@ public class SunshineSyncUtils {
 
         /*
          * This method call triggers Sunshine to create its task to synchronize weather data
-         * periodically.
+         * periodically. The Job is scheduled even if its interval didn't change, in case it got
+         * lost.
          */
-        scheduleFirebaseJobDispatcherSync(context);
+        SunshineSyncScheduler.scheduleSync(context, true);
 
         /*
          * We need to check to see if our ContentProvider has data to display in our forecast
@@ -181,7 +184,8 @@ public class SunshineSyncUtils {
 
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
-     * execution.
+     * execution. Requests that come in while a sync is running, or right after one finished,
+     * share that sync, see {@link SunshineSyncCoordinator}.
      *
      * @param context The Context used to start the IntentService for the sync.
      */
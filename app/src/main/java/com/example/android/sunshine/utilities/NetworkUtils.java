@@ -17,16 +17,22 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.util.Log;
 
+import com.example.android.sunshine.common.data.ResponseValidators;
 import com.example.android.sunshine.common.data.SunshinePreferences;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -83,6 +89,76 @@ public final class NetworkUtils {
     /* The days parameter allows us to designate how many days of weather data we want */
     private static final String DAYS_PARAM = "cnt";
 
+    /*
+     * Forecast JSON is very repetitive text and compresses well. We ask for a compressed response
+     * explicitly (rather than relying on HttpURLConnection to do so transparently) so that we can
+     * count the bytes that actually went over the network.
+     */
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    /* Size of the buffer used to read compressed data while inflating a response */
+    private static final int INFLATER_BUFFER_SIZE = 4 * 1024;
+
+    /* Initial size of the response buffer if the server doesn't send a Content-Length */
+    private static final int DEFAULT_RESPONSE_BUFFER_SIZE = 16 * 1024;
+
+    /* Buffers larger than this are not kept around between requests */
+    private static final int MAX_POOLED_RESPONSE_BUFFER_SIZE = 256 * 1024;
+
+    /*
+     * Buffer that is reused for reading response bodies. The sync runs every few hours and the
+     * forecast is roughly the same size every time, so holding on to one buffer between syncs
+     * saves us from allocating and growing a new one for every response. It is handed out to one
+     * request at a time; concurrent requests simply allocate their own.
+     */
+    private static byte[] sResponseBuffer;
+
+    /**
+     * Consumes the body of an HTTP response straight from the connection's stream. This allows
+     * the response to be handed to a streaming parser instead of being read into a String first.
+     *
+     * @param <T> Type of the value produced from the response
+     */
+    public interface ResponseHandler<T> {
+
+        /**
+         * Called with the body of a successful response. The stream is closed and the connection
+         * released once this method returns.
+         *
+         * @param in            The body of the response
+         * @param contentLength The length of the body as sent by the server, -1 if unknown
+         * @return The value produced from the response
+         * @throws IOException Related to network and stream reading
+         */
+        T handleResponse(InputStream in, int contentLength) throws IOException;
+
+        /**
+         * Called instead of {@link #handleResponse(InputStream, int)} if a conditional request
+         * was answered with "304 Not Modified", meaning the last response is still current.
+         *
+         * @return The value produced for an unchanged response
+         */
+        T handleNotModified();
+    }
+
+    /* Reads the whole response body into a String, see getResponseFromHttpUrl(URL) */
+    private static final ResponseHandler<String> STRING_RESPONSE_HANDLER =
+            new ResponseHandler<String>() {
+                @Override
+                public String handleResponse(InputStream in, int contentLength)
+                        throws IOException {
+                    return readResponseBody(in, contentLength);
+                }
+
+                @Override
+                public String handleNotModified() {
+                    /* Plain requests are never conditional, so this can't happen */
+                    return null;
+                }
+            };
+
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
      * well as {@link #buildUrlWithLocationQuery(String)} is two fold.
@@ -98,17 +174,34 @@ public final class NetworkUtils {
      * @return URL to query weather service
      */
     public static URL getUrl(Context context) {
-        if (SunshinePreferences.isLocationLatLonAvailable(context)) {
-            double[] preferredCoordinates = SunshinePreferences.getLocationCoordinates(context);
-            double latitude = preferredCoordinates[0];
-            double longitude = preferredCoordinates[1];
+        /* Read everything from the same snapshot, so the coordinates belong to the location */
+        SunshinePreferences.Snapshot preferences = SunshinePreferences.getSnapshot(context);
+        if (preferences.isLocationLatLonAvailable()) {
+            double latitude = preferences.getLatitude();
+            double longitude = preferences.getLongitude();
             return buildUrlWithLatitudeLongitude(latitude, longitude);
         } else {
-            String locationQuery = SunshinePreferences.getPreferredWeatherLocation(context);
+            String locationQuery = preferences.getPreferredWeatherLocation();
             return buildUrlWithLocationQuery(locationQuery);
         }
     }
 
+    /**
+     * Builds the URL for the forecast of a saved location. For the location the user prefers
+     * this is the same URL {@link #getUrl(Context)} returns, so it uses the coordinates of the
+     * location once we know them. Any other location is requested by its name.
+     *
+     * @param context         used to access the SharedPreferences
+     * @param locationSetting The location as the user entered it
+     * @return URL to query weather service
+     */
+    public static URL getUrl(Context context, String locationSetting) {
+        if (locationSetting.equals(SunshinePreferences.getPreferredWeatherLocation(context))) {
+            return getUrl(context);
+        }
+        return buildUrlWithLocationQuery(locationSetting);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
@@ -169,22 +262,325 @@ public final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        return getResponseFromHttpUrl(url, STRING_RESPONSE_HANDLER);
+    }
+
+    /**
+     * Same as {@link #getResponseFromHttpUrl(URL)}, but can be cancelled.
+     *
+     * @param url    The URL to fetch the HTTP response from.
+     * @param signal Cancels the request, may be null
+     * @return The contents of the HTTP response, null if no response
+     * @throws IOException                Related to network and stream reading
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static String getResponseFromHttpUrl(URL url, CancellationSignal signal)
+            throws IOException {
+        return getResponseFromHttpUrl(url, STRING_RESPONSE_HANDLER, signal);
+    }
+
+    /**
+     * Fetches the HTTP response from the given URL and passes its body to the handler.
+     *
+     * @param url     The URL to fetch the HTTP response from.
+     * @param handler Consumes the body of the response
+     * @param <T>     Type of the value produced by the handler
+     * @return Whatever the handler returned
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T getResponseFromHttpUrl(URL url, ResponseHandler<T> handler)
+            throws IOException {
+        return getResponseFromHttpUrl(url, handler, null);
+    }
+
+    /**
+     * Fetches the HTTP response from the given URL and passes its body to the handler. Cancelling
+     * the signal closes the connection, which makes a blocked read fail right away.
+     *
+     * @param url     The URL to fetch the HTTP response from.
+     * @param handler Consumes the body of the response
+     * @param signal  Cancels the request, may be null
+     * @param <T>     Type of the value produced by the handler
+     * @return Whatever the handler returned
+     * @throws IOException                Related to network and stream reading
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static <T> T getResponseFromHttpUrl(URL url, ResponseHandler<T> handler,
+                                               CancellationSignal signal) throws IOException {
+        throwIfCanceled(signal);
+
+        HttpURLConnection urlConnection = openConnection(url);
+        disconnectOnCancel(urlConnection, signal);
         try {
-            InputStream in = urlConnection.getInputStream();
+            return handleResponseBody(urlConnection, handler, null);
+        } catch (IOException e) {
+            /* The connection may have failed because we closed it */
+            throwIfCanceled(signal);
+            throw e;
+        } finally {
+            disconnectOnCancel(null, signal);
+            urlConnection.disconnect();
+        }
+    }
+
+    /**
+     * Fetches the HTTP response from the given URL as a conditional request. If validators of an
+     * earlier response to the same URL are stored in {@link ResponseValidators}, they are sent
+     * along as If-None-Match and If-Modified-Since headers. Should the server answer with
+     * "304 Not Modified", the handler's {@link ResponseHandler#handleNotModified()} is called and
+     * nothing is downloaded.
+     * <p>
+     * The validators of a new response are only stored if the handler returned a non-null value,
+     * meaning the response has been consumed successfully. Callers that fail to store the result
+     * afterwards should drop the validators with {@link ResponseValidators#clearValidators}.
+     *
+     * @param context Context used to access the stored validators
+     * @param url     The URL to fetch the HTTP response from.
+     * @param handler Consumes the body of the response
+     * @param stats   Counts the bytes of the response, may be null
+     * @param <T>     Type of the value produced by the handler
+     * @return Whatever the handler returned
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T getResponseFromHttpUrl(Context context, URL url,
+                                               ResponseHandler<T> handler,
+                                               TransferStats stats) throws IOException {
+        return getResponseFromHttpUrl(context, url, handler, stats, null);
+    }
+
+    /**
+     * Same as {@link #getResponseFromHttpUrl(Context, URL, ResponseHandler, TransferStats)}, but
+     * can be cancelled. Cancelling the signal closes the connection, which makes a blocked read
+     * fail right away. No validators are stored for a cancelled request.
+     *
+     * @param context Context used to access the stored validators
+     * @param url     The URL to fetch the HTTP response from.
+     * @param handler Consumes the body of the response
+     * @param stats   Counts the bytes of the response, may be null
+     * @param signal  Cancels the request, may be null
+     * @param <T>     Type of the value produced by the handler
+     * @return Whatever the handler returned
+     * @throws IOException                Related to network and stream reading
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static <T> T getResponseFromHttpUrl(Context context, URL url,
+                                               ResponseHandler<T> handler,
+                                               TransferStats stats,
+                                               CancellationSignal signal) throws IOException {
+        String requestUrl = url.toString();
+
+        throwIfCanceled(signal);
+
+        HttpURLConnection urlConnection = openConnection(url);
+        disconnectOnCancel(urlConnection, signal);
+        try {
+            String eTag = ResponseValidators.getETag(context, requestUrl);
+            if (eTag != null) {
+                urlConnection.setRequestProperty("If-None-Match", eTag);
+            }
+
+            String lastModified = ResponseValidators.getLastModified(context, requestUrl);
+            if (lastModified != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.v(TAG, "Not modified: " + requestUrl);
+                return handler.handleNotModified();
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            T result = handleResponseBody(urlConnection, handler, stats);
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            throwIfCanceled(signal);
+            if (result != null) {
+                ResponseValidators.saveValidators(context, requestUrl,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
             }
-            scanner.close();
-            return response;
+
+            return result;
+        } catch (IOException e) {
+            /* The connection may have failed because we closed it */
+            throwIfCanceled(signal);
+            throw e;
         } finally {
+            disconnectOnCancel(null, signal);
             urlConnection.disconnect();
         }
     }
-}
\ No newline at end of file
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    /**
+     * Closes the connection once the signal is cancelled. HttpURLConnection can't be interrupted,
+     * closing its socket from another thread is the only way to stop a read that is blocked.
+     *
+     * @param urlConnection The connection to close, null to stop listening to the signal
+     * @param signal        The signal, may be null
+     */
+    private static void disconnectOnCancel(final HttpURLConnection urlConnection,
+                                           CancellationSignal signal) {
+        if (signal == null) {
+            return;
+        }
+
+        if (urlConnection == null) {
+            signal.setOnCancelListener(null);
+            return;
+        }
+
+        /* Called right away if the signal has been cancelled already */
+        signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                Log.v(TAG, "Request cancelled, closing the connection");
+                urlConnection.disconnect();
+            }
+        });
+    }
+
+    private static HttpURLConnection openConnection(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        return urlConnection;
+    }
+
+    /**
+     * Passes the body of a response to the handler, inflating it first if the server sent it
+     * compressed. The compressed body is inflated while the handler reads it, so it's never held
+     * in memory as a whole.
+     *
+     * @param urlConnection Connection the response is read from
+     * @param handler       Consumes the body of the response
+     * @param stats         Counts the bytes of the response, may be null
+     * @param <T>           Type of the value produced by the handler
+     * @return Whatever the handler returned
+     * @throws IOException Related to network and stream reading
+     */
+    private static <T> T handleResponseBody(HttpURLConnection urlConnection,
+                                            ResponseHandler<T> handler,
+                                            TransferStats stats) throws IOException {
+        CountingInputStream transferred = new CountingInputStream(urlConnection.getInputStream());
+        CountingInputStream decoded;
+        int contentLength;
+
+        String contentEncoding = urlConnection.getContentEncoding();
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            decoded = new CountingInputStream(
+                    new GZIPInputStream(transferred, INFLATER_BUFFER_SIZE));
+            /* Content-Length is the compressed size, we don't know the inflated one */
+            contentLength = -1;
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            decoded = new CountingInputStream(new InflaterInputStream(transferred));
+            contentLength = -1;
+        } else {
+            decoded = transferred;
+            contentLength = urlConnection.getContentLength();
+        }
+
+        try {
+            return handler.handleResponse(decoded, contentLength);
+        } finally {
+            decoded.close();
+
+            if (stats != null) {
+                stats.addResponse(transferred.getCount(), decoded.getCount());
+            }
+        }
+    }
+
+    /**
+     * Reads a response body into a String. If the server told us the length of the body, the
+     * buffer is sized to fit it exactly so that it never has to grow while reading.
+     *
+     * @param in            The body of the response
+     * @param contentLength The length of the body, -1 if unknown
+     * @return The body decoded as UTF-8, null if the body was empty
+     * @throws IOException Related to network and stream reading
+     */
+    private static String readResponseBody(InputStream in, int contentLength) throws IOException {
+        /* One extra byte lets us see the end of the stream without growing the buffer */
+        int expectedSize = contentLength > 0 ? contentLength + 1 : DEFAULT_RESPONSE_BUFFER_SIZE;
+        byte[] buffer = obtainResponseBuffer(expectedSize);
+        try {
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            return length == 0 ? null : new String(buffer, 0, length, "UTF-8");
+        } finally {
+            recycleResponseBuffer(buffer);
+        }
+    }
+
+    private static synchronized byte[] obtainResponseBuffer(int minimumSize) {
+        byte[] buffer = sResponseBuffer;
+        sResponseBuffer = null;
+        if (buffer == null || buffer.length < minimumSize) {
+            buffer = new byte[minimumSize];
+        }
+        return buffer;
+    }
+
+    private static synchronized void recycleResponseBuffer(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_RESPONSE_BUFFER_SIZE
+                && (sResponseBuffer == null || sResponseBuffer.length < buffer.length)) {
+            sResponseBuffer = buffer;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the wrapped stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                mCount++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read != -1) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            /* Resetting would make us count bytes twice */
+            return false;
+        }
+    }
+}
@@ -7,8 +7,8 @@ import android.content.Intent;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Build;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.support.v4.content.ContextCompat;
@@ -17,6 +17,7 @@ import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.common.utilities.WeatherIconCache;
 import com.example.android.sunshine.common.data.SunshinePreferences;
 import com.example.android.sunshine.common.data.WeatherContract;
 
@@ -48,6 +49,19 @@ public class NotificationUtils {
      */
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
+    /* The size of a notification's large icon before Honeycomb, where there's no dimen for it */
+    private static final int LARGE_ICON_SIZE_DP = 64;
+
+    /**
+     * Returns the size of the large icon of a notification in pixels.
+     */
+    private static int getLargeIconSize(Resources resources) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+        }
+        return Math.round(LARGE_ICON_SIZE_DP * resources.getDisplayMetrics().density);
+    }
+
     /**
      * Constructs and displays a notification for the newly updated weather for today.
      *
@@ -85,9 +99,14 @@ public class NotificationUtils {
             int largeArtResourceId = SunshineWeatherUtils
                     .getLargeArtResourceIdForWeatherCondition(weatherId);
 
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
+            /*
+             * The large art is vector art, which BitmapFactory can't decode. The cache draws it
+             * into a bitmap of the size of a notification's large icon.
+             */
+            Bitmap largeIcon = WeatherIconCache.getIcon(
+                    context,
+                    largeArtResourceId,
+                    getLargeIconSize(resources));
 
             String notificationTitle = context.getString(R.string.app_name);
 
@@ -15,17 +15,23 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
 
 import com.example.android.sunshine.common.utilities.SunshineDateUtils;
+import com.example.android.sunshine.common.data.ForecastBatch;
 import com.example.android.sunshine.common.data.SunshinePreferences;
-import com.example.android.sunshine.common.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 
 /**
@@ -61,6 +67,20 @@ public final class OpenWeatherJsonUtils {
 
     private static final String OWM_MESSAGE_CODE = "cod";
 
+    /*
+     * Bit flags used by the streaming parser to make sure every field we need for a day has been
+     * read. The JSONObject based parser gets the same guarantee from its getXXX methods, which
+     * throw if a field is missing.
+     */
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WINDSPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_WEATHER_ID = 1 << 4;
+    private static final int FIELD_MAX = 1 << 5;
+    private static final int FIELD_MIN = 1 << 6;
+    private static final int ALL_DAY_FIELDS = (1 << 7) - 1;
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
@@ -78,6 +98,52 @@ public final class OpenWeatherJsonUtils {
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
 
+        double[] cityCoordinates = new double[2];
+        ContentValues[] weatherContentValues =
+                getWeatherContentValuesFromJson(forecastJsonStr, cityCoordinates);
+
+        if (weatherContentValues != null) {
+            SunshinePreferences.setLocationDetails(context, cityCoordinates[0], cityCoordinates[1]);
+        }
+        return weatherContentValues;
+    }
+
+    /**
+     * Same as {@link #getWeatherContentValuesFromJson(Context, String)}, but rather than storing
+     * the coordinates of the city as the preferred location's, this method hands them back. Use
+     * it for locations other than the preferred one.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param cityCoordinates Array of two that receives the latitude and longitude of the city
+     *
+     * @return Array of ContentValues for each day of the forecast, null if the server reported an
+     * error
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ContentValues[] getWeatherContentValuesFromJson(String forecastJsonStr,
+                                                                  double[] cityCoordinates)
+            throws JSONException {
+
+        ForecastBatch forecast = getForecastFromJson(forecastJsonStr, cityCoordinates);
+        return forecast != null ? forecast.toContentValues() : null;
+    }
+
+    /**
+     * Parses the forecast into a {@link ForecastBatch}, which holds the days in primitive arrays
+     * rather than a ContentValues per day. This is what the sync hands to the WeatherProvider.
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param cityCoordinates Array of two that receives the latitude and longitude of the city
+     *
+     * @return The forecast, null if the server reported an error
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ForecastBatch getForecastFromJson(String forecastJsonStr,
+                                                    double[] cityCoordinates)
+            throws JSONException {
+
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
         /* Is there an error? */
@@ -101,12 +167,10 @@ public final class OpenWeatherJsonUtils {
         JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
 
         JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        cityCoordinates[0] = cityCoord.getDouble(OWM_LATITUDE);
+        cityCoordinates[1] = cityCoord.getDouble(OWM_LONGITUDE);
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+        ForecastBatch forecast = new ForecastBatch(jsonWeatherArray.length());
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -167,19 +231,263 @@ public final class OpenWeatherJsonUtils {
             high = temperatureObject.getDouble(OWM_MAX);
             low = temperatureObject.getDouble(OWM_MIN);
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+            forecast.addDay(dateTimeMillis, weatherId, low, high, humidity, pressure, windSpeed,
+                    windDirection);
         }
 
+        return forecast;
+    }
+
+    /**
+     * Returns whether {@link #getWeatherContentValuesFromStream(Context, InputStream)} can be used
+     * on this device. The streaming parser is built on {@link JsonReader}, which was added in
+     * Honeycomb. On older devices {@link #getWeatherContentValuesFromJson(Context, String)} has to
+     * be used instead.
+     *
+     * @return true if the streaming parser is available
+     */
+    public static boolean isStreamingParserAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Streaming counterpart of {@link #getWeatherContentValuesFromJson(Context, String)}. Rather
+     * than building a JSONObject tree for the whole response, this method pulls tokens straight
+     * from the stream, skips every field it doesn't need and adds a day to the forecast as soon
+     * as that day has been read. Both methods return the same values for the same input, so
+     * they can be checked against each other.
+     *
+     * @param context Context used to store the location coordinates in SharedPreferences
+     * @param in      Stream containing the JSON response from the server. It is closed once the
+     *                response has been parsed.
+     *
+     * @return Array of ContentValues for each day of the forecast, null if the server reported an
+     * error
+     *
+     * @throws IOException If the stream cannot be read or doesn't contain the forecast we expect
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getWeatherContentValuesFromStream(Context context, InputStream in)
+            throws IOException {
+
+        double[] cityCoordinates = new double[2];
+        ContentValues[] weatherContentValues =
+                getWeatherContentValuesFromStream(in, cityCoordinates);
+
+        if (weatherContentValues != null) {
+            SunshinePreferences.setLocationDetails(context, cityCoordinates[0], cityCoordinates[1]);
+        }
         return weatherContentValues;
     }
-}
\ No newline at end of file
+
+    /**
+     * Same as {@link #getWeatherContentValuesFromStream(Context, InputStream)}, but rather than
+     * storing the coordinates of the city as the preferred location's, this method hands them
+     * back. Use it for locations other than the preferred one.
+     *
+     * @param in              Stream containing the JSON response from the server. It is closed
+     *                        once the response has been parsed.
+     * @param cityCoordinates Array of two that receives the latitude and longitude of the city
+     *
+     * @return Array of ContentValues for each day of the forecast, null if the server reported an
+     * error
+     *
+     * @throws IOException If the stream cannot be read or doesn't contain the forecast we expect
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getWeatherContentValuesFromStream(InputStream in,
+                                                                    double[] cityCoordinates)
+            throws IOException {
+
+        ForecastBatch forecast = getForecastFromStream(in, cityCoordinates);
+        return forecast != null ? forecast.toContentValues() : null;
+    }
+
+    /**
+     * Streaming counterpart of {@link #getForecastFromJson(String, double[])}.
+     *
+     * @param in              Stream containing the JSON response from the server. It is closed
+     *                        once the response has been parsed.
+     * @param cityCoordinates Array of two that receives the latitude and longitude of the city
+     *
+     * @return The forecast, null if the server reported an error
+     *
+     * @throws IOException If the stream cannot be read or doesn't contain the forecast we expect
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ForecastBatch getForecastFromStream(InputStream in, double[] cityCoordinates)
+            throws IOException {
+
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            return readForecast(reader, cityCoordinates);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ForecastBatch readForecast(JsonReader reader, double[] cityCoordinates)
+            throws IOException {
+
+        int errorCode = HttpURLConnection.HTTP_OK;
+
+        boolean hasCityCoordinates = false;
+        double cityLatitude = 0;
+        double cityLongitude = 0;
+
+        /* See getWeatherContentValuesFromJson for why we ignore the dates sent by OWM */
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+        ForecastBatch forecast = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                errorCode = reader.nextInt();
+
+            } else if (OWM_CITY.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!OWM_COORD.equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    int coordinatesRead = 0;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String coordinateName = reader.nextName();
+                        if (OWM_LATITUDE.equals(coordinateName)) {
+                            cityLatitude = reader.nextDouble();
+                            coordinatesRead++;
+                        } else if (OWM_LONGITUDE.equals(coordinateName)) {
+                            cityLongitude = reader.nextDouble();
+                            coordinatesRead++;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    hasCityCoordinates = coordinatesRead == 2;
+                }
+                reader.endObject();
+
+            } else if (OWM_LIST.equals(name)) {
+                forecast = new ForecastBatch();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    long dateTimeMillis = normalizedUtcStartDay
+                            + SunshineDateUtils.DAY_IN_MILLIS * forecast.size();
+                    readDayForecast(reader, dateTimeMillis, forecast);
+                }
+                reader.endArray();
+
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        /* Is there an error? Location invalid or server probably down */
+        if (errorCode != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+
+        if (forecast == null || !hasCityCoordinates) {
+            throw new IOException("Forecast JSON is missing the '" + OWM_LIST + "' array or the '"
+                    + OWM_CITY + "' coordinates");
+        }
+
+        cityCoordinates[0] = cityLatitude;
+        cityCoordinates[1] = cityLongitude;
+
+        return forecast;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDayForecast(JsonReader reader, long dateTimeMillis,
+                                        ForecastBatch forecast)
+            throws IOException {
+
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        int weatherId = 0;
+
+        int fieldsRead = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                fieldsRead |= FIELD_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+                fieldsRead |= FIELD_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                fieldsRead |= FIELD_WINDSPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                fieldsRead |= FIELD_WIND_DIRECTION;
+
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Only the first element of the "weather" array is of interest to us */
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = reader.nextInt();
+                            fieldsRead |= FIELD_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        fieldsRead |= FIELD_MAX;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        fieldsRead |= FIELD_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (fieldsRead != ALL_DAY_FIELDS) {
+            throw new IOException("Incomplete day forecast in JSON, fields read: "
+                    + Integer.toBinaryString(fieldsRead));
+        }
+
+        forecast.addDay(dateTimeMillis, weatherId, low, high, humidity, pressure, windSpeed,
+                windDirection);
+    }
+}
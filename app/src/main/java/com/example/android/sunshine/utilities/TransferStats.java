@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.util.Locale;
+
+/**
+ * Counts the bytes of the responses fetched during a sync, both as they were transferred over the
+ * network and after they have been inflated. Comparing the two tells us how much transfer
+ * compression saves us.
+ */
+public final class TransferStats {
+
+    private int mResponseCount;
+    private long mTransferredBytes;
+    private long mDecodedBytes;
+
+    /**
+     * Adds the sizes of a response to the counters.
+     *
+     * @param transferredBytes Bytes of the response body as sent over the network
+     * @param decodedBytes     Bytes of the response body after inflating it
+     */
+    public synchronized void addResponse(long transferredBytes, long decodedBytes) {
+        mResponseCount++;
+        mTransferredBytes += transferredBytes;
+        mDecodedBytes += decodedBytes;
+    }
+
+    /**
+     * Adds the counters of other stats to these, for example those of a single location to the
+     * ones of the whole sync.
+     *
+     * @param other The stats to add
+     */
+    public void add(TransferStats other) {
+        int responseCount;
+        long transferredBytes;
+        long decodedBytes;
+        synchronized (other) {
+            responseCount = other.mResponseCount;
+            transferredBytes = other.mTransferredBytes;
+            decodedBytes = other.mDecodedBytes;
+        }
+
+        synchronized (this) {
+            mResponseCount += responseCount;
+            mTransferredBytes += transferredBytes;
+            mDecodedBytes += decodedBytes;
+        }
+    }
+
+    public synchronized int getResponseCount() {
+        return mResponseCount;
+    }
+
+    public synchronized long getTransferredBytes() {
+        return mTransferredBytes;
+    }
+
+    public synchronized long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        float ratio = mDecodedBytes == 0 ? 1f : (float) mTransferredBytes / mDecodedBytes;
+        return String.format(Locale.US, "%d response(s), %d bytes transferred, %d bytes decoded (%.0f%%)",
+                mResponseCount, mTransferredBytes, mDecodedBytes, ratio * 100);
+    }
+}
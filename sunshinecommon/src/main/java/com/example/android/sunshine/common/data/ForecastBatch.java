@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.common.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * The days of a forecast, stored column by column in one primitive array per column of the
+ * weather table. A forecast of a couple of weeks is a handful of arrays, where a ContentValues per
+ * day would be a HashMap with a boxed value for every column.
+ * <p>
+ * Days are added with {@link #addDay}, after that a batch is only meant to be read. It is handed
+ * from the parser to {@link WeatherProvider} and on to the watch without being converted, use
+ * {@link #toContentValues()} only where a ContentValues array is unavoidable, like a
+ * ContentProvider in another process.
+ */
+public final class ForecastBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of days the batch is expected to hold. It grows if more are
+     *                 added, but knowing the number up front saves copying the arrays.
+     */
+    public ForecastBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Adds a day to the end of the batch.
+     *
+     * @param date      Normalized UTC date of the day
+     * @param weatherId Weather condition code of OpenWeatherMap
+     * @param minTemp   Low temperature in Celsius
+     * @param maxTemp   High temperature in Celsius
+     * @param humidity  Humidity in percent
+     * @param pressure  Atmospheric pressure in hPa
+     * @param windSpeed Wind speed in meters per second
+     * @param degrees   Meteorological direction of the wind in degrees
+     */
+    public void addDay(long date, int weatherId, double minTemp, double maxTemp,
+                       double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+
+        mDates[mSize] = date;
+        mWeatherIds[mSize] = weatherId;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    /**
+     * Adds a day of another batch to the end of this one.
+     */
+    void addDay(ForecastBatch forecast, int day) {
+        addDay(forecast.mDates[day],
+                forecast.mWeatherIds[day],
+                forecast.mMinTemps[day],
+                forecast.mMaxTemps[day],
+                forecast.mHumidities[day],
+                forecast.mPressures[day],
+                forecast.mWindSpeeds[day],
+                forecast.mDegrees[day]);
+    }
+
+    private void grow() {
+        int capacity = mDates.length * 2;
+        mDates = Arrays.copyOf(mDates, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    /**
+     * @return The number of days in the batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int day) {
+        checkDay(day);
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        checkDay(day);
+        return mWeatherIds[day];
+    }
+
+    public double getMinTemp(int day) {
+        checkDay(day);
+        return mMinTemps[day];
+    }
+
+    public double getMaxTemp(int day) {
+        checkDay(day);
+        return mMaxTemps[day];
+    }
+
+    public double getHumidity(int day) {
+        checkDay(day);
+        return mHumidities[day];
+    }
+
+    public double getPressure(int day) {
+        checkDay(day);
+        return mPressures[day];
+    }
+
+    public double getWindSpeed(int day) {
+        checkDay(day);
+        return mWindSpeeds[day];
+    }
+
+    public double getDegrees(int day) {
+        checkDay(day);
+        return mDegrees[day];
+    }
+
+    /**
+     * Returns the first day whose date is on or after the given date.
+     *
+     * @param date Normalized UTC date, for example today's
+     * @return The index of the day, or -1 if every day of the batch is before the date
+     */
+    public int findFirstDayFrom(long date) {
+        for (int day = 0; day < mSize; day++) {
+            if (mDates[day] >= date) {
+                return day;
+            }
+        }
+        return -1;
+    }
+
+    private void checkDay(int day) {
+        if (day < 0 || day >= mSize) {
+            throw new IndexOutOfBoundsException("Day " + day + " of a forecast of " + mSize);
+        }
+    }
+
+    /**
+     * Converts a day into the ContentValues of a row of the weather table.
+     *
+     * @param day The index of the day
+     * @return The values of every forecast column, the location isn't part of them
+     */
+    public ContentValues toContentValues(int day) {
+        checkDay(day);
+
+        ContentValues weatherValues = new ContentValues(8);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, mDates[day]);
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[day]);
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, mPressures[day]);
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[day]);
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, mDegrees[day]);
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[day]);
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[day]);
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[day]);
+        return weatherValues;
+    }
+
+    /**
+     * Converts the whole batch into ContentValues, one per day.
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] weatherContentValues = new ContentValues[mSize];
+        for (int day = 0; day < mSize; day++) {
+            weatherContentValues[day] = toContentValues(day);
+        }
+        return weatherContentValues;
+    }
+
+    /**
+     * Reads a forecast out of ContentValues, as they are passed to
+     * {@link WeatherProvider#bulkInsert(android.net.Uri, ContentValues[])}. Columns that aren't
+     * forecast columns, like the location, are ignored.
+     *
+     * @param values One set of values per day
+     * @return The forecast
+     * @throws IllegalArgumentException If a day is missing one of the forecast columns
+     */
+    public static ForecastBatch fromContentValues(ContentValues[] values) {
+        ForecastBatch forecast = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            forecast.addDay(
+                    getRequiredLong(value, WeatherEntry.COLUMN_DATE),
+                    (int) getRequiredLong(value, WeatherEntry.COLUMN_WEATHER_ID),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_MIN_TEMP),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_MAX_TEMP),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_HUMIDITY),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_PRESSURE),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_WIND_SPEED),
+                    getRequiredDouble(value, WeatherEntry.COLUMN_DEGREES));
+        }
+        return forecast;
+    }
+
+    private static long getRequiredLong(ContentValues value, String column) {
+        Long result = value.getAsLong(column);
+        if (result == null) {
+            throw new IllegalArgumentException("Forecast day is missing " + column + ": " + value);
+        }
+        return result;
+    }
+
+    private static double getRequiredDouble(ContentValues value, String column) {
+        Double result = value.getAsDouble(column);
+        if (result == null) {
+            throw new IllegalArgumentException("Forecast day is missing " + column + ": " + value);
+        }
+        return result;
+    }
+}
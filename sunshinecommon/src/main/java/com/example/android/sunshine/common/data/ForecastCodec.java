@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import android.content.Context;
+
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.utilities.SunshineDateUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs the days of a forecast into the bytes of a single DataItem for the watch, and unpacks
+ * them again on the watch. Only what the watch face shows is sent: the date, the weather and the
+ * low and high temperature of every day.
+ * <p>
+ * The format is
+ * <pre>
+ *     byte    version (FORMAT_VERSION)
+ *     byte    number of days
+ *     long    normalized UTC date of the first day
+ *     per day:
+ *         byte    days since the first day
+ *         short   weather id
+ *         short   low temperature in tenths of a degree Celsius
+ *         short   high temperature in tenths of a degree Celsius
+ * </pre>
+ * which is 7 bytes per day, a two week forecast fits into 108 bytes.
+ */
+public final class ForecastCodec {
+
+    /** Path of the DataItem that carries the forecast */
+    public static final String PATH_FORECAST = "/forecast";
+
+    /** Key of the encoded forecast in the DataMap of the DataItem */
+    public static final String KEY_FORECAST = "forecast";
+
+    /**
+     * Key of the time the phone last synced the forecast, in milliseconds since the epoch, in the
+     * DataMap of the DataItem. The phone updates it after every sync, even if the forecast stayed
+     * the same, so the watch can tell a forecast that didn't change from one it missed.
+     */
+    public static final String KEY_SYNCED_AT = "synced_at";
+
+    /** Path of the message the watch sends to ask the phone for the forecast */
+    public static final String PATH_FORECAST_REQUEST = "/weather-update";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAX_DAYS = 0xFF;
+
+    private static final int HEADER_SIZE = 1 + 1 + 8;
+    private static final int DAY_SIZE = 1 + 2 + 2 + 2;
+
+    private ForecastCodec() {
+    }
+
+    /**
+     * Returns how long ago the phone may have synced a forecast before it is stale. The watch
+     * asks the phone for a new one then, and the phone syncs before it answers. The bound is
+     * R.integer.max_forecast_age_minutes, so phone and watch agree on it.
+     *
+     * @param context Used to read the resource
+     * @return The maximum age of a forecast in milliseconds
+     */
+    public static long getMaxForecastAgeMillis(Context context) {
+        return TimeUnit.MINUTES.toMillis(
+                context.getResources().getInteger(R.integer.max_forecast_age_minutes));
+    }
+
+    /**
+     * Encodes the days of a forecast from a given day on.
+     *
+     * @param forecast The forecast
+     * @param firstDay The index of the first day to encode, usually today's
+     * @return The encoded days
+     */
+    public static byte[] encode(ForecastBatch forecast, int firstDay) {
+        int dayCount = Math.min(forecast.size() - firstDay, MAX_DAYS);
+        if (dayCount < 0) {
+            throw new IndexOutOfBoundsException("Day " + firstDay + " of a forecast of "
+                    + forecast.size());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + DAY_SIZE * dayCount);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            long firstDate = dayCount > 0 ? forecast.getDate(firstDay) : 0;
+
+            out.writeByte(FORMAT_VERSION);
+            out.writeByte(dayCount);
+            out.writeLong(firstDate);
+
+            for (int day = firstDay; day < firstDay + dayCount; day++) {
+                long daysSinceFirst =
+                        (forecast.getDate(day) - firstDate) / SunshineDateUtils.DAY_IN_MILLIS;
+                if (daysSinceFirst < 0 || daysSinceFirst > MAX_DAYS) {
+                    throw new IllegalArgumentException("Forecast days must be in order");
+                }
+
+                out.writeByte((int) daysSinceFirst);
+                out.writeShort(forecast.getWeatherId(day));
+                out.writeShort(toTenths(forecast.getMinTemp(day)));
+                out.writeShort(toTenths(forecast.getMaxTemp(day)));
+            }
+        } catch (IOException e) {
+            /* A ByteArrayOutputStream doesn't throw */
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a forecast encoded by {@link #encode(ForecastBatch, int)}. The columns that aren't
+     * sent to the watch are 0.
+     *
+     * @param encoded The encoded forecast
+     * @return The forecast
+     * @throws IllegalArgumentException If the bytes aren't an encoded forecast this version
+     *                                  understands
+     */
+    public static ForecastBatch decode(byte[] encoded) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        try {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unknown forecast format " + version);
+            }
+
+            int dayCount = in.readUnsignedByte();
+            long firstDate = in.readLong();
+
+            ForecastBatch forecast = new ForecastBatch(dayCount);
+            for (int day = 0; day < dayCount; day++) {
+                long date = firstDate + in.readUnsignedByte() * SunshineDateUtils.DAY_IN_MILLIS;
+                int weatherId = in.readShort();
+                double minTemp = in.readShort() / 10d;
+                double maxTemp = in.readShort() / 10d;
+                forecast.addDay(date, weatherId, minTemp, maxTemp, 0, 0, 0, 0);
+            }
+            return forecast;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated forecast", e);
+        }
+    }
+
+    private static int toTenths(double temperature) {
+        long tenths = Math.round(temperature * 10);
+        return (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.common.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.common.utilities.LogHelper;
+
+/**
+ * A compiled INSERT statement for a day of the forecast. SQLiteDatabase.insert builds the SQL
+ * for every single row it inserts; this statement is compiled once per batch and every row only
+ * binds its values to it, straight from the primitive arrays of a {@link ForecastBatch}.
+ * <p>
+ * The location the rows belong to is bound once for the whole batch.
+ */
+final class ForecastInsertStatement {
+
+    private static final String TAG = LogHelper.LOG_TAG(ForecastInsertStatement.class);
+
+    /* The order of these columns is the order of the statement's bind arguments */
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_LOCATION_ID,
+    };
+
+    private static final String SQL_INSERT = buildInsertSql();
+
+    private final SQLiteStatement mStatement;
+
+    /**
+     * Compiles the statement. Don't forget to {@link #close()} it when the batch is done.
+     *
+     * @param db         The database to insert into
+     * @param locationId The _ID of the location all rows of the batch belong to
+     */
+    ForecastInsertStatement(SQLiteDatabase db, long locationId) {
+        mStatement = db.compileStatement(SQL_INSERT);
+        mStatement.bindLong(9, locationId);
+    }
+
+    /**
+     * Inserts a single day. Just like SQLiteDatabase.insert, this logs and swallows any error.
+     *
+     * @param forecast The forecast the day belongs to
+     * @param day      The index of the day within the forecast
+     * @return The row ID of the inserted row, or -1 if an error occurred
+     */
+    long insert(ForecastBatch forecast, int day) {
+        mStatement.bindLong(1, forecast.getDate(day));
+        mStatement.bindLong(2, forecast.getWeatherId(day));
+        mStatement.bindDouble(3, forecast.getMinTemp(day));
+        mStatement.bindDouble(4, forecast.getMaxTemp(day));
+        mStatement.bindDouble(5, forecast.getHumidity(day));
+        mStatement.bindDouble(6, forecast.getPressure(day));
+        mStatement.bindDouble(7, forecast.getWindSpeed(day));
+        mStatement.bindDouble(8, forecast.getDegrees(day));
+
+        try {
+            return mStatement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting day " + day + " of the forecast", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Releases the compiled statement.
+     */
+    void close() {
+        mStatement.close();
+    }
+
+    private static String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherEntry.TABLE_NAME)
+                .append(" (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i == 0 ? "" : ",").append(COLUMNS[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.append(')').toString();
+    }
+}
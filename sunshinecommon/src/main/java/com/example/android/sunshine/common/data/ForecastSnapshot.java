@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import com.example.android.sunshine.common.data.WeatherContract.WeatherEntry;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * An immutable copy of the stored forecast of a single location, exactly as it is stored in the
+ * weather table. The rows are sorted by date and kept in a {@link ForecastBatch} along with their
+ * _IDs, so the snapshot holds no boxed values.
+ * <p>
+ * Queries are answered with a Cursor that reads straight from the snapshot, so serving a query
+ * neither touches the database nor copies any rows. As nothing in a snapshot ever changes, any
+ * number of Cursors can read it from any thread.
+ */
+final class ForecastSnapshot {
+
+    /* The columns of the weather table, in the order SELECT * returns them */
+    private static final String[] ALL_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOCATION_ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+    };
+
+    /* The indices of ALL_COLUMNS */
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_LOCATION_ID = 1;
+    private static final int INDEX_DATE = 2;
+    private static final int INDEX_WEATHER_ID = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_MAX_TEMP = 5;
+    private static final int INDEX_HUMIDITY = 6;
+    private static final int INDEX_PRESSURE = 7;
+    private static final int INDEX_WIND_SPEED = 8;
+    private static final int INDEX_DEGREES = 9;
+
+    /* Index of the first REAL column, all columns before are INTEGER columns */
+    private static final int FIRST_REAL_COLUMN = INDEX_MIN_TEMP;
+
+    private final long mLocationId;
+
+    /* The _ID of every day of mForecast. Neither is modified after construction. */
+    private final long[] mRowIds;
+    private final ForecastBatch mForecast;
+
+    private ForecastSnapshot(long locationId, long[] rowIds, ForecastBatch forecast) {
+        mLocationId = locationId;
+        mRowIds = rowIds;
+        mForecast = forecast;
+    }
+
+    long getLocationId() {
+        return mLocationId;
+    }
+
+    /**
+     * Returns the days of the forecast from a date onwards.
+     *
+     * @param projection The columns to return, null for all of them
+     * @param firstDate  The normalized date of the first day to return
+     * @return A Cursor over the days, or null if the projection asks for a column that isn't part
+     * of the weather table
+     */
+    Cursor queryFrom(String[] projection, long firstDate) {
+        int firstRow = mForecast.findFirstDayFrom(firstDate);
+        if (firstRow == -1) {
+            firstRow = mForecast.size();
+        }
+        return newCursor(projection, firstRow, mForecast.size());
+    }
+
+    /**
+     * Returns a single day of the forecast.
+     *
+     * @param projection The columns to return, null for all of them
+     * @param date       The normalized date of the day
+     * @return A Cursor that contains the day, or no rows at all if the forecast doesn't cover the
+     * date. Null if the projection asks for a column that isn't part of the weather table.
+     */
+    Cursor queryDate(String[] projection, long date) {
+        int row = mForecast.findFirstDayFrom(date);
+        if (row != -1 && mForecast.getDate(row) == date) {
+            return newCursor(projection, row, row + 1);
+        }
+        return newCursor(projection, 0, 0);
+    }
+
+    private Cursor newCursor(String[] projection, int firstRow, int endRow) {
+        if (projection == null) {
+            projection = ALL_COLUMNS;
+        }
+
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = indexOf(projection[i]);
+            if (columns[i] == -1) {
+                return null;
+            }
+        }
+        return new SnapshotCursor(projection, columns, firstRow, endRow);
+    }
+
+    private long getInteger(int row, int column) {
+        switch (column) {
+            case INDEX_ID:
+                return mRowIds[row];
+            case INDEX_LOCATION_ID:
+                return mLocationId;
+            case INDEX_DATE:
+                return mForecast.getDate(row);
+            case INDEX_WEATHER_ID:
+                return mForecast.getWeatherId(row);
+            default:
+                return (long) getReal(row, column);
+        }
+    }
+
+    private double getReal(int row, int column) {
+        switch (column) {
+            case INDEX_MIN_TEMP:
+                return mForecast.getMinTemp(row);
+            case INDEX_MAX_TEMP:
+                return mForecast.getMaxTemp(row);
+            case INDEX_HUMIDITY:
+                return mForecast.getHumidity(row);
+            case INDEX_PRESSURE:
+                return mForecast.getPressure(row);
+            case INDEX_WIND_SPEED:
+                return mForecast.getWindSpeed(row);
+            case INDEX_DEGREES:
+                return mForecast.getDegrees(row);
+            default:
+                return getInteger(row, column);
+        }
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Turns a REAL into a String the same way a database Cursor does, which is C's "%g": six
+     * significant digits without trailing zeros, in scientific notation for very large and very
+     * small values. Double.toString would give "75.0" where the database gives "75".
+     */
+    private static String formatReal(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+
+        BigDecimal rounded = new BigDecimal(value).round(new MathContext(6));
+        if (rounded.signum() == 0) {
+            return "0";
+        }
+
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        if (exponent >= -4 && exponent < 6) {
+            return rounded.stripTrailingZeros().toPlainString();
+        }
+
+        String mantissa = rounded.movePointLeft(exponent).stripTrailingZeros().toPlainString();
+        int absExponent = Math.abs(exponent);
+        return mantissa + (exponent < 0 ? "e-" : "e+") + (absExponent < 10 ? "0" : "") + absExponent;
+    }
+
+    /**
+     * Collects the rows of a forecast while it is being written to the database.
+     */
+    static final class Builder {
+
+        private final long mLocationId;
+        private final ForecastBatch mForecast;
+        private final long[] mRowIds;
+        private int mRowCount;
+
+        /**
+         * @param locationId The _ID of the location the forecast belongs to
+         * @param forecast   The forecast that is being written
+         */
+        Builder(long locationId, ForecastBatch forecast) {
+            mLocationId = locationId;
+            mForecast = forecast;
+            mRowIds = new long[forecast.size()];
+        }
+
+        /**
+         * Records the _ID the next day of the forecast is stored with. The days have to be added
+         * in the order of the forecast.
+         *
+         * @param rowId The _ID of the row in the weather table
+         */
+        void add(long rowId) {
+            mRowIds[mRowCount++] = rowId;
+        }
+
+        /**
+         * @return The snapshot, or null if the rows don't describe what is stored, because a
+         * date was added more than once or a row is missing
+         */
+        ForecastSnapshot build() {
+            int size = mForecast.size();
+            if (mRowCount != size) {
+                return null;
+            }
+
+            /*
+             * Sort the days by date with an insertion sort. The weather server sends them in
+             * order, so this usually is a single pass that doesn't move anything.
+             */
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                int day = i;
+                int j = i;
+                for (; j > 0 && mForecast.getDate(order[j - 1]) > mForecast.getDate(day); j--) {
+                    order[j] = order[j - 1];
+                }
+                order[j] = day;
+            }
+
+            ForecastBatch sorted = new ForecastBatch(size);
+            long[] rowIds = new long[size];
+            for (int i = 0; i < size; i++) {
+                int day = order[i];
+                if (i > 0 && mForecast.getDate(day) == sorted.getDate(i - 1)) {
+                    return null;
+                }
+                sorted.addDay(mForecast, day);
+                rowIds[i] = mRowIds[day];
+            }
+            return new ForecastSnapshot(mLocationId, rowIds, sorted);
+        }
+    }
+
+    /**
+     * A read-only view of a range of the snapshot's rows. Just like a MatrixCursor, but backed by
+     * the shared rows of the snapshot instead of a copy.
+     */
+    private final class SnapshotCursor extends AbstractCursor {
+
+        private final String[] mColumnNames;
+        private final int[] mColumns;
+        private final int mFirstRow;
+        private final int mCount;
+
+        SnapshotCursor(String[] columnNames, int[] columns, int firstRow, int endRow) {
+            mColumnNames = columnNames;
+            mColumns = columns;
+            mFirstRow = firstRow;
+            mCount = endRow - firstRow;
+        }
+
+        /* Returns the row of the snapshot for the current position and checks the column */
+        private int checkPosition(int column) {
+            if (column < 0 || column >= mColumns.length) {
+                throw new IndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mColumns.length);
+            }
+            if (mPos < 0 || mPos >= mCount) {
+                throw new IndexOutOfBoundsException("Position " + mPos + " out of bounds");
+            }
+            return mFirstRow + mPos;
+        }
+
+        private boolean isReal(int column) {
+            return mColumns[column] >= FIRST_REAL_COLUMN;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            int row = checkPosition(column);
+            return isReal(column)
+                    ? formatReal(getReal(row, mColumns[column]))
+                    : Long.toString(getInteger(row, mColumns[column]));
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return getInteger(checkPosition(column), mColumns[column]);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return getReal(checkPosition(column), mColumns[column]);
+        }
+
+        @Override
+        public int getType(int column) {
+            return isReal(column) ? Cursor.FIELD_TYPE_FLOAT : Cursor.FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            /* Every column of the weather table is NOT NULL */
+            checkPosition(column);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps the forecast of every location that has been written since the process started in
+ * memory, along with the _IDs of the locations. {@link WeatherProvider} answers the queries of
+ * the UI, the notifications and the watch from here, so reading the forecast right after a sync
+ * doesn't go back to SQLite for the rows that were just written.
+ * <p>
+ * The cache is only ever filled by writers, never by readers. Every write to the forecast of a
+ * location calls {@link #beginWrite(long)} inside its transaction, which drops the location's
+ * snapshot. Since SQLite runs write transactions one at a time, the write numbers it hands out
+ * follow the order in which the writes commit, and a writer can only store its snapshot if no
+ * later write to the location has begun in the meantime.
+ * <p>
+ * The location _IDs are stored by readers, so they are guarded by a generation that changes
+ * whenever a location is deleted. An _ID that was looked up before the deletion is never stored.
+ */
+final class ForecastSnapshotCache {
+
+    private static final Object sLock = new Object();
+
+    private static final Map<Long, ForecastSnapshot> sSnapshots = new HashMap<>();
+
+    /* The number of the latest write that began for a location */
+    private static final Map<Long, Long> sLatestWrites = new HashMap<>();
+    private static long sWriteCount;
+
+    private static final Map<String, Long> sLocationIds = new HashMap<>();
+    private static long sLocationsGeneration;
+
+    private ForecastSnapshotCache() {
+    }
+
+    /**
+     * @param locationId The _ID of the location
+     * @return The snapshot of the location's forecast, or null if it isn't cached
+     */
+    static ForecastSnapshot get(long locationId) {
+        synchronized (sLock) {
+            return sSnapshots.get(locationId);
+        }
+    }
+
+    /**
+     * Drops the snapshot of a location because its forecast is about to change. Call this inside
+     * the transaction of the write, before it commits.
+     *
+     * @param locationId The _ID of the location
+     * @return The number of the write, to pass to {@link #put(ForecastSnapshot, long)}
+     */
+    static long beginWrite(long locationId) {
+        synchronized (sLock) {
+            long write = ++sWriteCount;
+            sLatestWrites.put(locationId, write);
+            sSnapshots.remove(locationId);
+            return write;
+        }
+    }
+
+    /**
+     * Stores the snapshot a write produced. Call this after the write committed.
+     *
+     * @param snapshot The forecast of the location as it has been committed
+     * @param write    The number {@link #beginWrite(long)} returned for the write
+     */
+    static void put(ForecastSnapshot snapshot, long write) {
+        synchronized (sLock) {
+            Long latestWrite = sLatestWrites.get(snapshot.getLocationId());
+            if (latestWrite != null && latestWrite == write) {
+                sSnapshots.put(snapshot.getLocationId(), snapshot);
+            }
+        }
+    }
+
+    /**
+     * @param locationSetting The location as the user entered it
+     * @return The _ID of the location, or -1 if it isn't cached
+     */
+    static long getLocationId(String locationSetting) {
+        synchronized (sLock) {
+            Long locationId = sLocationIds.get(locationSetting);
+            return locationId != null ? locationId : -1;
+        }
+    }
+
+    /**
+     * Returns the current generation of the location _IDs. Read it before looking a location up
+     * in the database and pass it to {@link #putLocationId(String, long, long)}.
+     */
+    static long getLocationsGeneration() {
+        synchronized (sLock) {
+            return sLocationsGeneration;
+        }
+    }
+
+    /**
+     * Stores the _ID of a location, unless a location has been deleted since the given
+     * generation was read.
+     */
+    static void putLocationId(String locationSetting, long locationId, long generation) {
+        synchronized (sLock) {
+            if (generation == sLocationsGeneration) {
+                sLocationIds.put(locationSetting, locationId);
+            }
+        }
+    }
+
+    /**
+     * Forgets a location along with its forecast. Call this both inside the transaction that
+     * deletes the location and after it committed.
+     *
+     * @param locationId The _ID of the location
+     */
+    static void removeLocation(long locationId) {
+        synchronized (sLock) {
+            sLocationsGeneration++;
+            sLatestWrites.put(locationId, ++sWriteCount);
+            sSnapshots.remove(locationId);
+            Iterator<Long> locationIds = sLocationIds.values().iterator();
+            while (locationIds.hasNext()) {
+                if (locationIds.next() == locationId) {
+                    locationIds.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets everything, for when the database has been created from scratch.
+     */
+    static void clear() {
+        synchronized (sLock) {
+            sLocationsGeneration++;
+            sSnapshots.clear();
+            sLatestWrites.clear();
+            sLocationIds.clear();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Stores the HTTP cache validators (ETag and Last-Modified) the weather server sent along with the
+ * last response for a request URL. Sending them back with the next request allows the server to
+ * answer with "304 Not Modified" instead of the whole forecast.
+ * <p>
+ * The validators are kept in their own SharedPreferences file, so they don't show up next to the
+ * user's settings and can be dropped all at once whenever the cached forecast is discarded.
+ */
+public final class ResponseValidators {
+
+    private static final String PREFERENCES_NAME = "response_validators";
+
+    private static final String KEY_SUFFIX_ETAG = "|etag";
+    private static final String KEY_SUFFIX_LAST_MODIFIED = "|last_modified";
+
+    /**
+     * Returns the ETag the server sent with the last stored response for the given URL.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param url     The request URL
+     * @return The ETag, null if none is stored
+     */
+    public static String getETag(Context context, String url) {
+        return getPreferences(context).getString(url + KEY_SUFFIX_ETAG, null);
+    }
+
+    /**
+     * Returns the Last-Modified date the server sent with the last stored response for the given
+     * URL. The value is kept exactly as it was sent, so it can be echoed back in an
+     * If-Modified-Since header without any date parsing.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param url     The request URL
+     * @return The Last-Modified header value, null if none is stored
+     */
+    public static String getLastModified(Context context, String url) {
+        return getPreferences(context).getString(url + KEY_SUFFIX_LAST_MODIFIED, null);
+    }
+
+    /**
+     * Stores the validators of a response. Passing null for a validator removes it.
+     *
+     * @param context      Context used to get the SharedPreferences
+     * @param url          The request URL
+     * @param eTag         Value of the ETag header of the response
+     * @param lastModified Value of the Last-Modified header of the response
+     */
+    public static void saveValidators(Context context, String url, String eTag,
+                                      String lastModified) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+
+        if (eTag != null) {
+            editor.putString(url + KEY_SUFFIX_ETAG, eTag);
+        } else {
+            editor.remove(url + KEY_SUFFIX_ETAG);
+        }
+
+        if (lastModified != null) {
+            editor.putString(url + KEY_SUFFIX_LAST_MODIFIED, lastModified);
+        } else {
+            editor.remove(url + KEY_SUFFIX_LAST_MODIFIED);
+        }
+
+        editor.apply();
+    }
+
+    /**
+     * Removes the validators for the given URL, so the next request fetches the full response.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param url     The request URL
+     */
+    public static void clearValidators(Context context, String url) {
+        saveValidators(context, url, null, null);
+    }
+
+    /**
+     * Removes all stored validators. This needs to happen whenever the cached weather data is
+     * thrown away, as a "304 Not Modified" would otherwise leave us without any data.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void clearAll(Context context) {
+        getPreferences(context).edit().clear().apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -21,6 +21,12 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.common.R;
 
+/**
+ * Reads and writes Sunshine's preferences. The getters don't go to SharedPreferences, they read
+ * a {@link Snapshot} of the preferences that is kept up to date by listening to their changes.
+ * The getters are called for every item of the forecast list, and a snapshot spares them looking
+ * up keys and parsing values every time.
+ */
 public final class SunshinePreferences {
 
     /*
@@ -31,6 +37,174 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    private static final Object sSnapshotLock = new Object();
+
+    /* The preferences as they are right now, null until first needed */
+    private static volatile Snapshot sSnapshot;
+
+    /* SharedPreferences only keeps a weak reference to its listeners, so we keep this one */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sSnapshotUpdater;
+
+    /**
+     * An immutable copy of the preferences. Any number of threads may read it, and reading it
+     * costs no more than reading a field.
+     */
+    public static final class Snapshot {
+
+        private final String mPreferredWeatherLocation;
+        private final boolean mMetric;
+        private final boolean mLocationLatLonAvailable;
+        private final double mLatitude;
+        private final double mLongitude;
+        private final boolean mNotificationsEnabled;
+        private final long mLastNotificationTimeInMillis;
+        private final long mLastSyncTimeInMillis;
+
+        private Snapshot(Context context, SharedPreferences sp) {
+            mPreferredWeatherLocation = sp.getString(
+                    context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_default));
+
+            String metric = context.getString(R.string.pref_units_metric);
+            mMetric = metric.equals(sp.getString(context.getString(R.string.pref_units_key), metric));
+
+            mLocationLatLonAvailable = sp.contains(PREF_COORD_LAT) && sp.contains(PREF_COORD_LONG);
+
+            /*
+             * This is a hack we have to resort to since you can't store doubles in
+             * SharedPreferences.
+             *
+             * Double.doubleToLongBits returns an integer corresponding to the bits of the given
+             * IEEE 754 double precision value.
+             *
+             * Double.longBitsToDouble does the opposite, converting a long (that represents a
+             * double) into the double itself.
+             */
+            mLatitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
+            mLongitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+
+            /*
+             * In Sunshine, the user has the ability to say whether she would like notifications
+             * enabled or not. If no preference has been chosen, we want to be able to determine
+             * whether or not to show them. To do this, we reference a bool stored in bools.xml.
+             */
+            mNotificationsEnabled = sp.getBoolean(
+                    context.getString(R.string.pref_enable_notifications_key),
+                    context.getResources().getBoolean(R.bool.show_notifications_by_default));
+
+            /*
+             * If SharedPreferences doesn't have a value for the last notification, we use 0. We
+             * compare this value with the current system time, and if the last notification was
+             * more than a day ago we show a notification again. A last notification time of 0 is
+             * always more than a day ago, so we will show another notification.
+             */
+            mLastNotificationTimeInMillis =
+                    sp.getLong(context.getString(R.string.pref_last_notification), 0);
+
+            mLastSyncTimeInMillis = sp.getLong(context.getString(R.string.pref_last_sync), 0);
+        }
+
+        /**
+         * @return The location the user set, "94043,USA" (Mountain View, California) by default
+         */
+        public String getPreferredWeatherLocation() {
+            return mPreferredWeatherLocation;
+        }
+
+        /**
+         * @return true if metric display should be used, false if imperial display should be used
+         */
+        public boolean isMetric() {
+            return mMetric;
+        }
+
+        /**
+         * @return true if lat/long of the preferred location are saved
+         */
+        public boolean isLocationLatLonAvailable() {
+            return mLocationLatLonAvailable;
+        }
+
+        /**
+         * @return The latitude of the preferred location, 0 if it isn't saved
+         */
+        public double getLatitude() {
+            return mLatitude;
+        }
+
+        /**
+         * @return The longitude of the preferred location, 0 if it isn't saved
+         */
+        public double getLongitude() {
+            return mLongitude;
+        }
+
+        /**
+         * @return true if the user prefers to see notifications, false otherwise
+         */
+        public boolean areNotificationsEnabled() {
+            return mNotificationsEnabled;
+        }
+
+        /**
+         * @return UNIX time of when the last notification was shown, 0 if none was
+         */
+        public long getLastNotificationTimeInMillis() {
+            return mLastNotificationTimeInMillis;
+        }
+
+        /**
+         * @return UNIX time of the last successful sync of the preferred location, 0 if none was
+         */
+        public long getLastSyncTimeInMillis() {
+            return mLastSyncTimeInMillis;
+        }
+    }
+
+    /**
+     * Returns a snapshot of the preferences as they are right now. Use this to read several
+     * preferences that have to fit together, like the coordinates and whether they are set.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @return The snapshot, which doesn't change when the preferences do
+     */
+    public static Snapshot getSnapshot(Context context) {
+        Snapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            refreshSnapshot(context);
+            snapshot = sSnapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the preferences into a new snapshot. The listener does this by itself, but change
+     * listeners are called in no particular order, and only on the main thread. Listeners that
+     * read the preferences, and writers that read them right after writing, call this first.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void refreshSnapshot(Context context) {
+        synchronized (sSnapshotLock) {
+            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+
+            if (sSnapshotUpdater == null) {
+                final Context appContext = context.getApplicationContext();
+                sSnapshotUpdater = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                        refreshSnapshot(appContext);
+                    }
+                };
+                sp.registerOnSharedPreferenceChangeListener(sSnapshotUpdater);
+            }
+
+            sSnapshot = new Snapshot(context, sp);
+        }
+    }
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -48,6 +222,8 @@ public final class SunshinePreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+
+        refreshSnapshot(context);
     }
 
     /**
@@ -62,6 +238,8 @@ public final class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+
+        refreshSnapshot(context);
     }
 
     /**
@@ -74,12 +252,7 @@ public final class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return getSnapshot(context).getPreferredWeatherLocation();
     }
 
     /**
@@ -89,19 +262,7 @@ public final class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return getSnapshot(context).isMetric();
     }
 
     /**
@@ -113,25 +274,8 @@ public final class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
-
-        return preferredCoordinates;
+        Snapshot snapshot = getSnapshot(context);
+        return new double[]{snapshot.getLatitude(), snapshot.getLongitude()};
     }
 
     /**
@@ -142,17 +286,7 @@ public final class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return getSnapshot(context).isLocationLatLonAvailable();
     }
 
     /**
@@ -163,26 +297,7 @@ public final class SunshinePreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return getSnapshot(context).areNotificationsEnabled();
     }
 
     /**
@@ -192,25 +307,7 @@ public final class SunshinePreferences {
      * @return UNIX time of when the last notification was shown
      */
     public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which Sunshine last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /*
-         * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
-         */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
+        return getSnapshot(context).getLastNotificationTimeInMillis();
     }
 
     /**
@@ -241,5 +338,34 @@ public final class SunshinePreferences {
         String lastNotificationKey = context.getString(R.string.pref_last_notification);
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
+
+        refreshSnapshot(context);
+    }
+
+    /**
+     * Returns the last time the forecast of the preferred location was synced successfully (in
+     * UNIX time), whether the sync changed the forecast or not.
+     *
+     * @param context Used to access SharedPreferences
+     * @return UNIX time of the last successful sync, 0 if there was none
+     */
+    public static long getLastSyncTimeInMillis(Context context) {
+        return getSnapshot(context).getLastSyncTimeInMillis();
+    }
+
+    /**
+     * Saves the time the forecast of the preferred location was synced successfully.
+     *
+     * @param context    Used to access SharedPreferences
+     * @param timeOfSync Time of the sync to save (in UNIX time)
+     */
+    public static void saveLastSyncTime(Context context, long timeOfSync) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        String lastSyncKey = context.getString(R.string.pref_last_sync);
+        editor.putLong(lastSyncKey, timeOfSync);
+        editor.apply();
+
+        refreshSnapshot(context);
     }
-}
\ No newline at end of file
+}
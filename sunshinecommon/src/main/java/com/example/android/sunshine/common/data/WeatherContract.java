@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.common.data;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -56,7 +57,111 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
-    /* Inner class that defines the table contents of the weather table */
+    /*
+     * The saved locations. The forecast of a single location lives below its location URI:
+     *
+     *     content://com.example.android.sunshine/location/7/weather/1472214172
+     *     [           BASE_CONTENT_URI         ][PATH_LOCATION][id][PATH_WEATHER][date]
+     */
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * Appended to a weather URI to replace the stored forecast with a new one in a single
+     * operation, see WeatherEntry.REPLACE_URI.
+     */
+    public static final String PATH_REPLACE = "replace";
+
+    /* Inner class that defines the table contents of the location table */
+    public static final class LocationEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the location table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        /* Used internally as the name of our location table. */
+        public static final String TABLE_NAME = "location";
+
+        /*
+         * The location as the user entered it in the settings, which is also what we send to the
+         * weather server. Every location setting is stored only once.
+         */
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        /*
+         * Coordinates of the location as returned by the weather server. These are null until
+         * the first forecast for the location has been fetched.
+         */
+        public static final String COLUMN_COORD_LAT = "coord_lat";
+        public static final String COLUMN_COORD_LONG = "coord_long";
+
+        /**
+         * Builds the URI of a single saved location.
+         *
+         * @param locationId The _ID of the location
+         * @return Uri of the location
+         */
+        public static Uri buildLocationUri(long locationId) {
+            return ContentUris.withAppendedId(CONTENT_URI, locationId);
+        }
+
+        /**
+         * Builds the URI of the forecast of a single location.
+         *
+         * @param locationId The _ID of the location
+         * @return Uri to query the forecast of the location
+         */
+        public static Uri buildWeatherUri(long locationId) {
+            return buildLocationUri(locationId).buildUpon()
+                    .appendPath(PATH_WEATHER)
+                    .build();
+        }
+
+        /**
+         * Builds the URI of the weather of a single location on a single day.
+         *
+         * @param locationId The _ID of the location
+         * @param date       Normalized date in milliseconds
+         * @return Uri to query details about a single weather entry of the location
+         */
+        public static Uri buildWeatherUriWithDate(long locationId, long date) {
+            return buildWeatherUri(locationId).buildUpon()
+                    .appendPath(Long.toString(date))
+                    .build();
+        }
+
+        /**
+         * Builds the URI that replaces the forecast of a single location when bulk inserting into
+         * it. See {@link WeatherEntry#REPLACE_URI} for how the forecast is replaced.
+         *
+         * @param locationId The _ID of the location
+         * @return Uri to replace the forecast of the location
+         */
+        public static Uri buildWeatherReplaceUri(long locationId) {
+            return buildWeatherUri(locationId).buildUpon()
+                    .appendPath(PATH_REPLACE)
+                    .build();
+        }
+
+        /**
+         * Returns the _ID of the location that a location URI, or one of the weather URIs below it,
+         * points to.
+         *
+         * @param uri A URI built by one of the methods above
+         * @return The _ID of the location
+         */
+        public static long getLocationIdFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(1));
+        }
+    }
+
+    /*
+     * Inner class that defines the table contents of the weather table.
+     *
+     * The URIs in here are scoped to the location the user prefers right now, see
+     * SunshinePreferences#getPreferredWeatherLocation. Use the URIs of LocationEntry to access
+     * the forecast of any other saved location.
+     */
     public static final class WeatherEntry implements BaseColumns {
 
         /* The base CONTENT_URI used to query the Weather table from the content provider */
@@ -64,9 +169,24 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * Bulk inserting into this URI replaces the whole forecast: rows whose values changed are
+         * updated, new dates are inserted and dates missing from the new forecast are deleted,
+         * all in one transaction. Unlike a delete followed by a bulk insert, readers never see an
+         * empty table and a single change notification is sent, or none if nothing changed.
+         *
+         *     content://com.example.android.sunshine/weather/replace
+         */
+        public static final Uri REPLACE_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_REPLACE)
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
+        /* The _ID of the location in the location table this weather belongs to */
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
         /*
          * The date column will store the UTC date that correlates to the local date for which
          * each particular weather row represents. For example, if you live in the Eastern
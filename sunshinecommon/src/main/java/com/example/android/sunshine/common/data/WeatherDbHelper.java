@@ -15,10 +15,17 @@
  */
 package com.example.android.sunshine.common.data;
 
+import android.annotation.TargetApi;
+import android.content.ContentValues;
 import android.content.Context;
+import android.content.res.Resources;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.text.TextUtils;
 
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.common.data.WeatherContract.WeatherEntry;
 
 /**
@@ -43,10 +50,94 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
      */
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 4;
+
+    /*
+     * The oldest database version that can be migrated to the current one. Databases older than
+     * this were created before we kept migrations and are simply thrown away and recreated.
+     *
+     * Whenever you change the schema, bump DATABASE_VERSION and add a step to migrateFrom that
+     * brings the previous version's schema and data forward. Don't raise this floor unless you
+     * really have to, as every user below it loses their cached forecast on the update.
+     */
+    private static final int OLDEST_MIGRATABLE_VERSION = 3;
+
+    private final Context mContext;
+
+    /*
+     * How the database is opened. These come from resources, so a build flavor or a device
+     * configuration can tune them without touching the code.
+     */
+    private final boolean mWriteAheadLogging;
+    private final String mSynchronousMode;
+    private final int mCacheSizePages;
 
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+
+        Resources resources = context.getResources();
+        mWriteAheadLogging = resources.getBoolean(R.bool.database_write_ahead_logging)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+        mSynchronousMode = resources.getString(R.string.database_synchronous_mode);
+        mCacheSizePages = resources.getInteger(R.integer.database_cache_size_pages);
+
+        /*
+         * With write-ahead logging, readers such as the forecast list's CursorLoader see the last
+         * committed data while the sync writes the new forecast, instead of waiting for the write
+         * transaction to finish. From Jelly Bean on, the helper turns it on while opening.
+         */
+        if (mWriteAheadLogging && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * Called when the database connection is being configured, before it is created or upgraded.
+     * Only available from Jelly Bean on; older versions configure the database in
+     * {@link #onOpen(SQLiteDatabase)} instead.
+     *
+     * @param db The database.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void onConfigure(SQLiteDatabase db) {
+        configurePragmas(db);
+    }
+
+    /**
+     * Called when the database has been opened. Before Jelly Bean there is no onConfigure, so
+     * this is where write-ahead logging is enabled and the pragmas are set.
+     *
+     * @param db The database.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+
+        /* enableWriteAheadLogging fails on read-only databases and must not run in a transaction */
+        if (mWriteAheadLogging && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+        configurePragmas(db);
+    }
+
+    /*
+     * synchronous=NORMAL only syncs the write-ahead log at checkpoints. A power loss may roll
+     * back the last sync, which is fine for a cache that the next sync fills again. Note that the
+     * pragmas apply to the connection that writes; with write-ahead logging, Android's extra
+     * read connections keep their defaults.
+     */
+    private void configurePragmas(SQLiteDatabase db) {
+        if (!TextUtils.isEmpty(mSynchronousMode)) {
+            db.execSQL("PRAGMA synchronous = " + mSynchronousMode);
+        }
+        if (mCacheSizePages > 0) {
+            db.execSQL("PRAGMA cache_size = " + mCacheSizePages);
+        }
     }
 
     /**
@@ -58,41 +149,77 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
 
+        createLocationTable(sqLiteDatabase);
+        createWeatherTable(sqLiteDatabase, WeatherEntry.TABLE_NAME);
+
+        /*
+         * The table starts out empty, so any validators stored for earlier responses are useless.
+         * Worse, they would make the server answer "304 Not Modified" and we'd never get data.
+         * For the same reason, nothing cached from a previous database may be served anymore.
+         */
+        ResponseValidators.clearAll(mContext);
+        ForecastSnapshotCache.clear();
+    }
+
+    private static void createLocationTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_LOCATION_TABLE =
+
+                "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+
+                LocationEntry._ID                     + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                /* Every location the user entered is stored exactly once */
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, "              +
+
+                LocationEntry.COLUMN_COORD_LAT        + " REAL, "                              +
+                LocationEntry.COLUMN_COORD_LONG       + " REAL);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+    }
+
+    private static void createWeatherTable(SQLiteDatabase sqLiteDatabase, String tableName) {
+
         /*
          * This String will contain a simple SQL statement that will create a table that will
          * cache our weather data.
          */
         final String SQL_CREATE_WEATHER_TABLE =
 
-                "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                "CREATE TABLE " + tableName + " (" +
 
                 /*
                  * WeatherEntry did not explicitly declare a column called "_ID". However,
                  * WeatherEntry implements the interface, "BaseColumns", which does have a field
                  * named "_ID". We use that here to designate our table's primary key.
                  */
-                WeatherEntry._ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                WeatherEntry._ID                + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
 
-                WeatherEntry.COLUMN_DATE       + " INTEGER NOT NULL, "                 +
+                WeatherEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL, "                 +
 
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"                  +
+                WeatherEntry.COLUMN_DATE        + " INTEGER NOT NULL, "                 +
 
-                WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_WEATHER_ID  + " INTEGER NOT NULL,"                  +
 
-                WeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_MIN_TEMP    + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_MAX_TEMP    + " REAL NOT NULL, "                    +
 
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_HUMIDITY    + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_PRESSURE    + " REAL NOT NULL, "                    +
+
+                WeatherEntry.COLUMN_WIND_SPEED  + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_DEGREES     + " REAL NOT NULL, "                    +
 
                 /*
-                 * To ensure this table can only contain one weather entry per date, we declare
-                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                 * SQLite that if we have a weather entry for a certain date and we attempt to
-                 * insert another weather entry with that date, we replace the old weather entry.
+                 * To ensure this table can only contain one weather entry per location and date,
+                 * we declare the pair to be unique. We also specify "ON CONFLICT REPLACE". This
+                 * tells SQLite that if we have a weather entry for a certain location and date
+                 * and we attempt to insert another one, we replace the old weather entry.
+                 *
+                 * SQLite backs this constraint with an index on (location_id, date), which is
+                 * exactly the index every forecast query of a location needs.
                  */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+                " UNIQUE (" + WeatherEntry.COLUMN_LOCATION_ID + ", " + WeatherEntry.COLUMN_DATE +
+                ") ON CONFLICT REPLACE);";
 
         /*
          * After we've spelled out our SQLite table creation statement above, we actually execute
@@ -102,12 +229,18 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Upgrades the database by running the migration step of every version between the old and
+     * the new one, in order. The steps keep the cached data, so an app update doesn't force every
+     * user to download their forecast again at the same moment.
+     * <p>
+     * Databases older than OLDEST_MIGRATABLE_VERSION have no migration path. As the database is
+     * only a cache for online data, those are simply dropped and recreated. Note that this only
+     * fires if you change the version number for your database (in our case, DATABASE_VERSION).
+     * It does NOT depend on the version number for your application found in your
+     * app/build.gradle file.
+     * <p>
+     * SQLiteOpenHelper runs this method in a transaction, so a failing step leaves the database
+     * at its old version.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -115,7 +248,74 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        for (int version = oldVersion; version < newVersion; version++) {
+            migrateFrom(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Migrates the schema and data of the database from the given version to the next one. Every
+     * version from OLDEST_MIGRATABLE_VERSION up to, but not including, DATABASE_VERSION needs a
+     * case here. Prefer ALTER TABLE where SQLite supports the change; otherwise create the new
+     * table, copy the rows over with INSERT INTO ... SELECT and drop the old one.
+     *
+     * @param sqLiteDatabase Database that is being upgraded
+     * @param version        The version the database is at right now
+     */
+    private void migrateFrom(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+
+            /*
+             * Version 4 stores the forecast of several locations. The cached forecast belongs to
+             * the location the user has set right now, so that location becomes the first row of
+             * the new location table. SQLite can't change the UNIQUE constraint of a table, so
+             * the weather is copied over into a new table.
+             */
+            case 3: {
+                createLocationTable(sqLiteDatabase);
+
+                ContentValues location = new ContentValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING,
+                        SunshinePreferences.getPreferredWeatherLocation(mContext));
+                if (SunshinePreferences.isLocationLatLonAvailable(mContext)) {
+                    double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+                    location.put(LocationEntry.COLUMN_COORD_LAT, coordinates[0]);
+                    location.put(LocationEntry.COLUMN_COORD_LONG, coordinates[1]);
+                }
+                long locationId = sqLiteDatabase.insertOrThrow(
+                        LocationEntry.TABLE_NAME, null, location);
+
+                final String weatherColumns = WeatherEntry._ID + ", "
+                        + WeatherEntry.COLUMN_DATE + ", "
+                        + WeatherEntry.COLUMN_WEATHER_ID + ", "
+                        + WeatherEntry.COLUMN_MIN_TEMP + ", "
+                        + WeatherEntry.COLUMN_MAX_TEMP + ", "
+                        + WeatherEntry.COLUMN_HUMIDITY + ", "
+                        + WeatherEntry.COLUMN_PRESSURE + ", "
+                        + WeatherEntry.COLUMN_WIND_SPEED + ", "
+                        + WeatherEntry.COLUMN_DEGREES;
+                final String newWeatherTable = WeatherEntry.TABLE_NAME + "_v4";
+
+                createWeatherTable(sqLiteDatabase, newWeatherTable);
+                sqLiteDatabase.execSQL("INSERT INTO " + newWeatherTable
+                        + " (" + weatherColumns + ", " + WeatherEntry.COLUMN_LOCATION_ID + ")"
+                        + " SELECT " + weatherColumns + ", " + locationId
+                        + " FROM " + WeatherEntry.TABLE_NAME);
+                sqLiteDatabase.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+                sqLiteDatabase.execSQL("ALTER TABLE " + newWeatherTable
+                        + " RENAME TO " + WeatherEntry.TABLE_NAME);
+                break;
+            }
+
+            default:
+                throw new IllegalStateException("No migration from database version " + version);
+        }
     }
-}
\ No newline at end of file
+}
@@ -17,15 +17,29 @@ package com.example.android.sunshine.common.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
 
+import com.example.android.sunshine.common.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.common.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.common.utilities.LogHelper;
 import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -38,6 +52,8 @@ import com.example.android.sunshine.common.utilities.SunshineDateUtils;
  */
 public class WeatherProvider extends ContentProvider {
 
+    private static final String TAG = LogHelper.LOG_TAG(WeatherProvider.class);
+
     /*
      * These constant will be used to match URIs with the data they are looking for. We will take
      * advantage of the UriMatcher class to make that matching MUCH easier than doing something
@@ -45,6 +61,27 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_REPLACE = 102;
+
+    public static final int CODE_LOCATION = 200;
+    public static final int CODE_LOCATION_WITH_ID = 201;
+    public static final int CODE_LOCATION_WEATHER = 202;
+    public static final int CODE_LOCATION_WEATHER_WITH_DATE = 203;
+    public static final int CODE_LOCATION_WEATHER_REPLACE = 204;
+
+    /*
+     * The columns compared when the forecast is replaced to find out whether a day has changed.
+     * The date isn't part of this list, it is what we match the rows by.
+     */
+    private static final String[] FORECAST_VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+    };
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -55,8 +92,8 @@ public class WeatherProvider extends ContentProvider {
     private WeatherDbHelper mOpenHelper;
 
     /**
-     * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
-     * CODE_WEATHER_WITH_DATE constants defined above.
+     * Creates the UriMatcher that will match each URI to the CODE_WEATHER and CODE_LOCATION
+     * constants defined above.
      * <p>
      * It's possible you might be thinking, "Why create a UriMatcher when you can use regular
      * expressions instead? After all, we really just need to match some patterns, and we can
@@ -68,7 +105,7 @@ public class WeatherProvider extends ContentProvider {
      * been tested and proven, you should almost always use it unless there is a compelling
      * reason not to.
      *
-     * @return A UriMatcher that correctly matches the constants for CODE_WEATHER and CODE_WEATHER_WITH_DATE
+     * @return A UriMatcher that correctly matches the CODE_ constants defined above
      */
     public static UriMatcher buildUriMatcher() {
 
@@ -96,6 +133,27 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/weather/replace */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_REPLACE,
+                CODE_WEATHER_REPLACE);
+
+        /*
+         * The saved locations and the forecast of each of them, for example
+         *
+         *     content://com.example.android.sunshine/location/7
+         *     content://com.example.android.sunshine/location/7/weather/1472214172
+         */
+        final String locationWeatherPath = WeatherContract.PATH_LOCATION + "/#/"
+                + WeatherContract.PATH_WEATHER;
+
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, CODE_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#", CODE_LOCATION_WITH_ID);
+        matcher.addURI(authority, locationWeatherPath, CODE_LOCATION_WEATHER);
+        matcher.addURI(authority, locationWeatherPath + "/#", CODE_LOCATION_WEATHER_WITH_DATE);
+        matcher.addURI(authority, locationWeatherPath + "/" + WeatherContract.PATH_REPLACE,
+                CODE_LOCATION_WEATHER_REPLACE);
+
         return matcher;
     }
 
@@ -132,48 +190,397 @@ public class WeatherProvider extends ContentProvider {
      * implement bulkInsert. In a normal ContentProvider's implementation, you will probably want
      * to provide proper functionality for the insert method as well.
      *
+     * Inserting into {@link WeatherEntry#REPLACE_URI} or one of the replace URIs of
+     * {@link LocationEntry} replaces the stored forecast with the given one, see
+     * {@link #replaceForecast(ForecastBatch, long, CancellationSignal)}.
+     * <p>
+     * The values are read into a {@link ForecastBatch} first, callers in our own process can
+     * skip that step with {@link #bulkInsertForecast(ContentResolver, Uri, ForecastBatch)}.
+     *
      * @param uri    The content:// URI of the insertion request.
      * @param values An array of sets of column_name/value pairs to add to the database.
      *               This must not be {@code null}.
      *
-     * @return The number of values that were inserted.
+     * @return The number of values that were inserted. When replacing the forecast, the number of
+     * rows that were inserted, updated or deleted.
      */
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_WEATHER_REPLACE:
+            case CODE_LOCATION_WEATHER_REPLACE:
+            case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER:
+                return bulkInsert(uri, ForecastBatch.fromContentValues(values));
+
+            default:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    /**
+     * Same as {@link #bulkInsert(Uri, ContentValues[])}, for a forecast that is already a
+     * ForecastBatch.
+     *
+     * @param uri      One of the weather URIs or replace URIs
+     * @param forecast The forecast to insert
+     * @return The number of days that were inserted. When replacing the forecast, the number of
+     * rows that were inserted, updated or deleted.
+     */
+    public int bulkInsert(@NonNull Uri uri, @NonNull ForecastBatch forecast) {
+        return bulkInsert(uri, forecast, null);
+    }
+
+    /**
+     * Same as {@link #bulkInsert(Uri, ForecastBatch)}, but can be cancelled. If the signal is
+     * cancelled before a replaced forecast is committed, its transaction is rolled back and the
+     * stored forecast stays as it was.
+     *
+     * @param uri      One of the weather URIs or replace URIs
+     * @param forecast The forecast to insert
+     * @param signal   Cancels the insert, may be null
+     * @return The number of days that were inserted. When replacing the forecast, the number of
+     * rows that were inserted, updated or deleted.
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public int bulkInsert(@NonNull Uri uri, @NonNull ForecastBatch forecast,
+                          CancellationSignal signal) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int match = sUriMatcher.match(uri);
 
-        switch (sUriMatcher.match(uri)) {
+        throwIfCanceled(signal);
+
+        switch (match) {
+
+            case CODE_WEATHER_REPLACE:
+            case CODE_LOCATION_WEATHER_REPLACE:
+                return replaceForecast(forecast, getLocationIdForUri(db, uri, match, true), signal);
 
             case CODE_WEATHER:
-                db.beginTransaction();
-                int rowsInserted = 0;
-                try {
-                    for (ContentValues value : values) {
-                        long weatherDate =
-                                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
-                        }
-
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            rowsInserted++;
-                        }
+            case CODE_LOCATION_WEATHER:
+                return insertForecast(forecast, getLocationIdForUri(db, uri, match, true));
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+    }
+
+    /**
+     * Bulk inserts a forecast into the WeatherProvider. If the provider runs in the caller's
+     * process, which it does for every part of Sunshine, the forecast is handed over as it is.
+     * Otherwise it has to be converted into ContentValues to cross the process boundary.
+     *
+     * @param resolver The ContentResolver to find the provider with
+     * @param uri      One of the weather URIs or replace URIs
+     * @param forecast The forecast to insert
+     * @return The value {@link #bulkInsert(Uri, ForecastBatch)} returns
+     */
+    public static int bulkInsertForecast(ContentResolver resolver, Uri uri,
+                                         ForecastBatch forecast) {
+        return bulkInsertForecast(resolver, uri, forecast, null);
+    }
+
+    /**
+     * Same as {@link #bulkInsertForecast(ContentResolver, Uri, ForecastBatch)}, but can be
+     * cancelled, see {@link #bulkInsert(Uri, ForecastBatch, CancellationSignal)}. A provider in
+     * another process can only be cancelled before the forecast is sent to it.
+     *
+     * @param resolver The ContentResolver to find the provider with
+     * @param uri      One of the weather URIs or replace URIs
+     * @param forecast The forecast to insert
+     * @param signal   Cancels the insert, may be null
+     * @return The value {@link #bulkInsert(Uri, ForecastBatch)} returns
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    public static int bulkInsertForecast(ContentResolver resolver, Uri uri,
+                                         ForecastBatch forecast, CancellationSignal signal) {
+        throwIfCanceled(signal);
+
+        ContentProviderClient client = resolver.acquireContentProviderClient(uri);
+        if (client == null) {
+            throw new IllegalArgumentException("Unknown URL " + uri);
+        }
+
+        try {
+            ContentProvider provider = client.getLocalContentProvider();
+            if (provider instanceof WeatherProvider) {
+                return ((WeatherProvider) provider).bulkInsert(uri, forecast, signal);
+            }
+            return client.bulkInsert(uri, forecast.toContentValues());
+        } catch (RemoteException e) {
+            throw new IllegalStateException("WeatherProvider died", e);
+        } finally {
+            client.release();
+        }
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    /**
+     * Inserts the days of a forecast for a location. Days the location already has weather for
+     * are replaced.
+     *
+     * @param forecast   The forecast
+     * @param locationId The _ID of the location the forecast belongs to
+     * @return The number of rows that were inserted
+     */
+    private int insertForecast(ForecastBatch forecast, long locationId) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        validateDates(forecast);
+
+        long startTime = SystemClock.elapsedRealtime();
+        int rowsInserted = 0;
+
+        db.beginTransaction();
+        /* The new days are merged with the stored ones, there's no snapshot to keep afterwards */
+        ForecastSnapshotCache.beginWrite(locationId);
+        ForecastInsertStatement insertStatement = new ForecastInsertStatement(db, locationId);
+        try {
+            for (int day = 0; day < forecast.size(); day++) {
+                if (insertStatement.insert(forecast, day) != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Inserted " + rowsInserted + " of " + forecast.size() + " rows in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+        if (rowsInserted > 0) {
+            notifyForecastChanged(db, locationId);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Replaces the stored forecast of a location with the given one in a single transaction.
+     * Only the rows that actually differ are touched: days whose values changed are updated, new
+     * days are inserted and stored days that are missing from the new forecast are deleted. Days
+     * that didn't change are left alone, which keeps the index churn down and means readers never
+     * see an empty forecast in between.
+     * <p>
+     * Observers of the forecast receive a single change notification if anything changed, and
+     * none at all if the new forecast is identical to the stored one. Once committed, the new
+     * forecast is kept in the {@link ForecastSnapshotCache}, which serves the reads that usually
+     * follow a sync.
+     *
+     * <p>
+     * The signal is checked for every day and once more right before the commit, cancelling it
+     * rolls the whole replacement back.
+     *
+     * @param forecast   The new forecast
+     * @param locationId The _ID of the location the forecast belongs to
+     * @param signal     Cancels the replacement, may be null
+     * @return The number of rows that were inserted, updated or deleted
+     * @throws OperationCanceledException If the signal was cancelled
+     */
+    private int replaceForecast(ForecastBatch forecast, long locationId,
+                                CancellationSignal signal) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        validateDates(forecast);
+
+        final String locationSelection = WeatherEntry.COLUMN_LOCATION_ID + " = " + locationId;
+        final String daySelection = locationSelection + " AND " + WeatherEntry.COLUMN_DATE + " = ?";
+
+        long startTime = SystemClock.elapsedRealtime();
+        int rowsChanged = 0;
+        long write;
+
+        db.beginTransaction();
+        ForecastInsertStatement insertStatement = new ForecastInsertStatement(db, locationId);
+        ForecastSnapshot.Builder snapshot = new ForecastSnapshot.Builder(locationId, forecast);
+        try {
+            write = ForecastSnapshotCache.beginWrite(locationId);
+
+            /* Read what we have stored right now, keyed by date */
+            Map<Long, double[]> storedDays = new HashMap<>();
+            Map<Long, Long> storedRowIds = new HashMap<>();
+            Cursor stored = db.query(WeatherEntry.TABLE_NAME,
+                    concat(WeatherEntry._ID, concat(WeatherEntry.COLUMN_DATE, FORECAST_VALUE_COLUMNS)),
+                    locationSelection, null, null, null, null);
+            try {
+                while (stored.moveToNext()) {
+                    double[] storedValues = new double[FORECAST_VALUE_COLUMNS.length];
+                    for (int i = 0; i < storedValues.length; i++) {
+                        storedValues[i] = stored.getDouble(i + 2);
                     }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+                    storedDays.put(stored.getLong(1), storedValues);
+                    storedRowIds.put(stored.getLong(1), stored.getLong(0));
                 }
+            } finally {
+                stored.close();
+            }
 
-                if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+            for (int day = 0; day < forecast.size(); day++) {
+                throwIfCanceled(signal);
+
+                long weatherDate = forecast.getDate(day);
+                double[] storedValues = storedDays.remove(weatherDate);
+                long _id;
+
+                if (storedValues == null) {
+                    _id = insertStatement.insert(forecast, day);
+                    if (_id != -1) {
+                        rowsChanged++;
+                    }
+                } else {
+                    _id = storedRowIds.get(weatherDate);
+                    if (!hasSameValues(forecast, day, storedValues)) {
+                        /* Changed days are rare, so converting them to ContentValues is fine */
+                        rowsChanged += db.update(WeatherEntry.TABLE_NAME,
+                                forecast.toContentValues(day),
+                                daySelection,
+                                new String[]{Long.toString(weatherDate)});
+                    }
                 }
 
-                return rowsInserted;
+                if (_id != -1) {
+                    snapshot.add(_id);
+                }
+            }
 
-            default:
-                return super.bulkInsert(uri, values);
+            /* Whatever is left over is no longer part of the forecast */
+            for (Long staleDate : storedDays.keySet()) {
+                rowsChanged += db.delete(WeatherEntry.TABLE_NAME,
+                        daySelection,
+                        new String[]{Long.toString(staleDate)});
+            }
+
+            /* Last chance to back out, once committed the new forecast is there to stay */
+            throwIfCanceled(signal);
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(TAG, "Replaced forecast of " + forecast.size() + " days, " + rowsChanged
+                + " rows changed in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+        ForecastSnapshot committed = snapshot.build();
+        if (committed != null) {
+            ForecastSnapshotCache.put(committed, write);
+        }
+
+        if (rowsChanged > 0) {
+            notifyForecastChanged(db, locationId);
+        }
+
+        return rowsChanged;
+    }
+
+    /**
+     * Returns the _ID of the location the user prefers right now. The URIs of
+     * {@link WeatherEntry} are scoped to this location.
+     *
+     * @param db     The database to look the location up in
+     * @param create Whether to add the location if it hasn't been saved yet
+     * @return The _ID of the location, or -1 if it hasn't been saved and create is false
+     */
+    private long getPreferredLocationId(SQLiteDatabase db, boolean create) {
+        String locationSetting = SunshinePreferences.getPreferredWeatherLocation(getContext());
+        return getLocationId(db, locationSetting, create);
+    }
+
+    private static long getLocationId(SQLiteDatabase db, String locationSetting,
+                                      boolean create) {
+        long locationId = ForecastSnapshotCache.getLocationId(locationSetting);
+        if (locationId != -1) {
+            return locationId;
+        }
+
+        /*
+         * Only _IDs that have been committed may be cached. Inside a transaction, the location
+         * might still be rolled back.
+         */
+        boolean cacheable = !db.inTransaction();
+        long generation = ForecastSnapshotCache.getLocationsGeneration();
+
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            if (cursor.moveToFirst()) {
+                locationId = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (locationId == -1) {
+            if (!create) {
+                return -1;
+            }
+
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            locationId = db.insertOrThrow(LocationEntry.TABLE_NAME, null, location);
+        }
+
+        if (cacheable) {
+            ForecastSnapshotCache.putLocationId(locationSetting, locationId, generation);
         }
+        return locationId;
+    }
+
+    /*
+     * Tells the observers of a location's forecast that it changed. If it is the forecast of the
+     * preferred location, the observers of the WeatherEntry URIs are told as well.
+     */
+    private void notifyForecastChanged(SQLiteDatabase db, long locationId) {
+        ContentResolver resolver = getContext().getContentResolver();
+        resolver.notifyChange(LocationEntry.buildWeatherUri(locationId), null);
+        if (locationId == getPreferredLocationId(db, false)) {
+            resolver.notifyChange(WeatherEntry.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * Makes sure every day of a forecast has a normalized date before any of them is written.
+     *
+     * @param forecast The forecast to insert
+     * @throws IllegalArgumentException If a day doesn't have a normalized date
+     */
+    private static void validateDates(ForecastBatch forecast) {
+        for (int day = 0; day < forecast.size(); day++) {
+            if (!SunshineDateUtils.isDateNormalized(forecast.getDate(day))) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+        }
+    }
+
+    /* Compares a day with the values of FORECAST_VALUE_COLUMNS, in that order */
+    private static boolean hasSameValues(ForecastBatch forecast, int day, double[] storedValues) {
+        return forecast.getWeatherId(day) == storedValues[0]
+                && forecast.getMinTemp(day) == storedValues[1]
+                && forecast.getMaxTemp(day) == storedValues[2]
+                && forecast.getHumidity(day) == storedValues[3]
+                && forecast.getPressure(day) == storedValues[4]
+                && forecast.getWindSpeed(day) == storedValues[5]
+                && forecast.getDegrees(day) == storedValues[6];
+    }
+
+    private static String[] concat(String first, String[] rest) {
+        String[] result = new String[rest.length + 1];
+        result[0] = first;
+        System.arraycopy(rest, 0, result, 1, rest.length);
+        return result;
     }
 
     /**
@@ -195,13 +602,16 @@ public class WeatherProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
 
+        final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        final int match = sUriMatcher.match(uri);
+
         Cursor cursor;
 
         /*
          * Here's the switch statement that, given a URI, will determine what kind of request is
          * being made and query the database accordingly.
          */
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
 
             /*
              * When sUriMatcher's match method is called with a URI that looks something like this
@@ -214,9 +624,12 @@ public class WeatherProvider extends ContentProvider {
              * programmatically using Uri's getLastPathSegment method.
              *
              * In this case, we want to return a cursor that contains one row of weather data for
-             * a particular date.
+             * a particular date. The same goes for the location scoped URI
+             *
+             *      content://com.example.android.sunshine/location/7/weather/1472214172
              */
-            case CODE_WEATHER_WITH_DATE: {
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WEATHER_WITH_DATE: {
 
                 /*
                  * In order to determine the date associated with this URI, we look at the last
@@ -233,7 +646,18 @@ public class WeatherProvider extends ContentProvider {
                  */
                 String[] selectionArguments = new String[]{normalizedUtcDateString};
 
-                cursor = mOpenHelper.getReadableDatabase().query(
+                long locationId = getLocationIdForUri(db, uri, match, false);
+
+                /* If we have the forecast in memory, there's no need to ask the database */
+                ForecastSnapshot snapshot = ForecastSnapshotCache.get(locationId);
+                if (snapshot != null) {
+                    cursor = snapshot.queryDate(projection, Long.parseLong(normalizedUtcDateString));
+                    if (cursor != null) {
+                        break;
+                    }
+                }
+
+                cursor = db.query(
                         /* Table we are going to query */
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         /*
@@ -252,7 +676,8 @@ public class WeatherProvider extends ContentProvider {
                          * within the selectionArguments array will be inserted into the
                          * selection statement by SQLite under the hood.
                          */
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        withLocation(WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                                locationId),
                         selectionArguments,
                         null,
                         null,
@@ -270,12 +695,38 @@ public class WeatherProvider extends ContentProvider {
              * to return all of the weather in our weather table.
              *
              * In this case, we want to return a cursor that contains every row of weather data
-             * in our weather table.
+             * of the location the user prefers right now. For
+             *
+             *      content://com.example.android.sunshine/location/7/weather/
+             *
+             * we return the weather of that location instead.
              */
-            case CODE_WEATHER: {
-                cursor = mOpenHelper.getReadableDatabase().query(
+            case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER: {
+                long locationId = getLocationIdForUri(db, uri, match, false);
+
+                cursor = querySnapshot(locationId, projection, selection, selectionArgs,
+                        sortOrder);
+                if (cursor != null) {
+                    break;
+                }
+
+                cursor = db.query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
+                        withLocation(selection, locationId),
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_LOCATION: {
+                cursor = db.query(
+                        LocationEntry.TABLE_NAME,
+                        projection,
                         selection,
                         selectionArgs,
                         null,
@@ -285,6 +736,19 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            case CODE_LOCATION_WITH_ID: {
+                cursor = db.query(
+                        LocationEntry.TABLE_NAME,
+                        projection,
+                        LocationEntry._ID + " = ?",
+                        new String[]{Long.toString(ContentUris.parseId(uri))},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -316,25 +780,71 @@ public class WeatherProvider extends ContentProvider {
          */
         if (null == selection) selection = "1";
 
-        switch (sUriMatcher.match(uri)) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int match = sUriMatcher.match(uri);
 
+        switch (match) {
+
+            /*
+             * Deleting the weather of a location throws away only that location's forecast. For
+             * the WeatherEntry URI, that is the location the user prefers right now.
+             */
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+            case CODE_LOCATION_WEATHER: {
+                long locationId = getLocationIdForUri(db, uri, match, false);
+
+                ForecastSnapshotCache.beginWrite(locationId);
+                numRowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME,
-                        selection,
+                        withLocation(selection, locationId),
                         selectionArgs);
 
+                if (numRowsDeleted != 0) {
+                    onForecastDeleted(db, locationId);
+                }
+
                 break;
+            }
+
+            /* Deleting a location deletes its forecast along with it */
+            case CODE_LOCATION_WITH_ID: {
+                long locationId = ContentUris.parseId(uri);
+
+                db.beginTransaction();
+                try {
+                    ForecastSnapshotCache.removeLocation(locationId);
+                    numRowsDeleted = db.delete(
+                            LocationEntry.TABLE_NAME,
+                            LocationEntry._ID + " = " + locationId + " AND (" + selection + ")",
+                            selectionArgs);
+
+                    if (numRowsDeleted != 0) {
+                        db.delete(
+                                WeatherContract.WeatherEntry.TABLE_NAME,
+                                withLocation(null, locationId),
+                                null);
+                    }
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                /* Readers may have looked the location up again while we were deleting it */
+                ForecastSnapshotCache.removeLocation(locationId);
+
+                if (numRowsDeleted != 0) {
+                    onForecastDeleted(db, locationId);
+                    getContext().getContentResolver().notifyChange(uri, null);
+                }
+
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        /* If we actually deleted any rows, notify that a change has occurred to this URI */
-        if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
-
         return numRowsDeleted;
     }
 
@@ -354,25 +864,147 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /**
-     * In Sunshine, we aren't going to do anything with this method. However, we are required to
-     * override it as WeatherProvider extends ContentProvider and insert is an abstract method in
-     * ContentProvider. Rather than the single insert method, we are only going to implement
-     * {@link WeatherProvider#bulkInsert}.
+     * Saves a location. The only URI that takes single inserts is {@link LocationEntry#CONTENT_URI};
+     * the forecast itself is only ever inserted through {@link WeatherProvider#bulkInsert}.
+     * <p>
+     * Every location setting is stored only once, so inserting a location that has been saved
+     * before updates it with the given values and returns its existing URI.
      *
      * @param uri    The URI of the insertion request. This must not be null.
-     * @param values A set of column_name/value pairs to add to the database.
-     *               This must not be null
-     * @return nothing in Sunshine, but normally the URI for the newly inserted item.
+     * @param values A set of column_name/value pairs to add to the database. It has to contain
+     *               {@link LocationEntry#COLUMN_LOCATION_SETTING}.
+     * @return The URI of the location
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in Sunshine. Use bulkInsert instead");
+        if (sUriMatcher.match(uri) != CODE_LOCATION) {
+            throw new RuntimeException(
+                    "We are only implementing insert for locations in Sunshine. Use bulkInsert instead");
+        }
+
+        String locationSetting = values.getAsString(LocationEntry.COLUMN_LOCATION_SETTING);
+        if (locationSetting == null) {
+            throw new IllegalArgumentException("A location needs a location setting");
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long locationId;
+
+        db.beginTransaction();
+        try {
+            locationId = getLocationId(db, locationSetting, true);
+            if (values.size() > 1) {
+                db.update(LocationEntry.TABLE_NAME, values,
+                        LocationEntry._ID + " = " + locationId, null);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Uri locationUri = LocationEntry.buildLocationUri(locationId);
+        getContext().getContentResolver().notifyChange(locationUri, null);
+        return locationUri;
     }
 
+    /**
+     * Updates a saved location, for example with the coordinates the weather server returned
+     * for it. The forecast can't be updated directly; bulk insert into one of the replace URIs
+     * instead.
+     *
+     * @param uri           The URI of the location
+     * @param values        The columns to change
+     * @param selection     An optional restriction to apply to the location
+     * @param selectionArgs Used in conjunction with the selection statement
+     * @return The number of rows updated
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+        if (sUriMatcher.match(uri) != CODE_LOCATION_WITH_ID) {
+            throw new RuntimeException("We are only implementing update for locations in Sunshine");
+        }
+
+        String locationSelection = LocationEntry._ID + " = " + ContentUris.parseId(uri);
+        if (selection != null) {
+            locationSelection += " AND (" + selection + ")";
+        }
+
+        int numRowsUpdated = mOpenHelper.getWritableDatabase().update(
+                LocationEntry.TABLE_NAME,
+                values,
+                locationSelection,
+                selectionArgs);
+
+        if (numRowsUpdated != 0) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+
+        return numRowsUpdated;
+    }
+
+    /*
+     * Returns the _ID of the location a weather URI is scoped to: the location in the URI, or the
+     * location the user prefers right now for the WeatherEntry URIs.
+     */
+    private long getLocationIdForUri(SQLiteDatabase db, Uri uri, int match, boolean create) {
+        switch (match) {
+            case CODE_LOCATION_WEATHER:
+            case CODE_LOCATION_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WEATHER_REPLACE:
+                return LocationEntry.getLocationIdFromUri(uri);
+
+            default:
+                return getPreferredLocationId(db, create);
+        }
+    }
+
+    /*
+     * Answers a query for the weather of a location from the ForecastSnapshotCache. The cache
+     * can only serve the queries Sunshine itself makes: all days, or the days from a date onwards
+     * as built by WeatherEntry.getSqlSelectForTodayOnwards, sorted by date. Returns null for
+     * everything else, and if the forecast isn't cached.
+     */
+    private static Cursor querySnapshot(long locationId, String[] projection, String selection,
+                                        String[] selectionArgs, String sortOrder) {
+        if (sortOrder != null
+                && !sortOrder.trim().equalsIgnoreCase(WeatherEntry.COLUMN_DATE + " ASC")) {
+            return null;
+        }
+
+        long firstDate = Long.MIN_VALUE;
+        if (selection != null) {
+            String todayOnwardsPrefix = WeatherEntry.COLUMN_DATE + " >= ";
+            if (selectionArgs != null || !selection.startsWith(todayOnwardsPrefix)) {
+                return null;
+            }
+            try {
+                firstDate = Long.parseLong(selection.substring(todayOnwardsPrefix.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        ForecastSnapshot snapshot = ForecastSnapshotCache.get(locationId);
+        return snapshot != null ? snapshot.queryFrom(projection, firstDate) : null;
+    }
+
+    /* Restricts a selection on the weather table to a single location */
+    private static String withLocation(String selection, long locationId) {
+        String locationSelection = WeatherEntry.COLUMN_LOCATION_ID + " = " + locationId;
+        if (selection == null) {
+            return locationSelection;
+        }
+        return "(" + selection + ") AND " + locationSelection;
+    }
+
+    /*
+     * The validators of the weather server's last responses are useless once the forecast they
+     * belong to is gone. Worse, they would make the server answer "304 Not Modified" and we'd
+     * never get the data back, so they are all dropped.
+     */
+    private void onForecastDeleted(SQLiteDatabase db, long locationId) {
+        ResponseValidators.clearAll(getContext());
+        notifyForecastChanged(db, locationId);
     }
 
     /**
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.utilities;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps the weather icons as bitmaps, ready to be drawn, shared by everything in the process
+ * that shows weather. An icon is keyed by its drawable, which stands for all the weather
+ * conditions that share it, and the size it is drawn at.
+ * <p>
+ * Vector art is drawn into a bitmap of the requested size, so icons can go where only bitmaps
+ * are accepted, like the large icon of a notification. The cache is bounded by the bytes of its
+ * bitmaps and drops the icons that haven't been used for the longest time first.
+ * <p>
+ * Icons are decoded on whatever thread asks for them. Prewarm the cache with the icons of the
+ * current forecast, with {@link #prewarm(Context, int[], int)} on a background thread or with
+ * {@link #prewarmInBackground(Context, int[], int)}, so the thread that shows them finds them
+ * decoded already.
+ */
+public final class WeatherIconCache {
+
+    /* The share of the heap the icons may take up */
+    private static final int HEAP_FRACTION = 32;
+
+    private static final LruCache<Long, Bitmap> sIcons =
+            new LruCache<Long, Bitmap>((int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION)) {
+                @Override
+                protected int sizeOf(Long key, Bitmap icon) {
+                    return icon.getRowBytes() * icon.getHeight();
+                }
+            };
+
+    /* Decodes the icons of prewarmInBackground, created when it is first needed */
+    private static ExecutorService sPrewarmExecutor;
+
+    private WeatherIconCache() {
+    }
+
+    private static long key(int resourceId, int sizePx) {
+        return ((long) resourceId << 32) | (sizePx & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param resourceId The drawable of the icon, as returned by
+     *                   {@link SunshineWeatherUtils#getSmallArtResourceIdForWeatherCondition(int)}
+     *                   or {@link SunshineWeatherUtils#getLargeArtResourceIdForWeatherCondition(int)}
+     * @param sizePx     The width and height of the icon in pixels, 0 for its intrinsic size
+     * @return The icon if it has been decoded already, null otherwise
+     */
+    public static Bitmap getCachedIcon(int resourceId, int sizePx) {
+        return sIcons.get(key(resourceId, sizePx));
+    }
+
+    /**
+     * Returns an icon, decoding it first if it isn't cached.
+     *
+     * @param context    Used to load the drawable
+     * @param resourceId The drawable of the icon
+     * @param sizePx     The width and height of the icon in pixels, 0 for its intrinsic size
+     * @return The icon, or null if the drawable can't be drawn
+     */
+    public static Bitmap getIcon(Context context, int resourceId, int sizePx) {
+        long key = key(resourceId, sizePx);
+        Bitmap icon = sIcons.get(key);
+        if (icon == null) {
+            icon = decodeIcon(context, resourceId, sizePx);
+            if (icon != null) {
+                sIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Decodes the icons that aren't cached yet. Don't call this on the main thread.
+     *
+     * @param context     Used to load the drawables
+     * @param resourceIds The drawables of the icons
+     * @param sizePx      The width and height of the icons in pixels, 0 for their intrinsic size
+     */
+    public static void prewarm(Context context, int[] resourceIds, int sizePx) {
+        for (int resourceId : resourceIds) {
+            getIcon(context, resourceId, sizePx);
+        }
+    }
+
+    /**
+     * Decodes the icons that aren't cached yet on a background thread.
+     *
+     * @param context     Used to load the drawables
+     * @param resourceIds The drawables of the icons
+     * @param sizePx      The width and height of the icons in pixels, 0 for their intrinsic size
+     */
+    public static void prewarmInBackground(Context context, final int[] resourceIds, final int sizePx) {
+        final Context appContext = context.getApplicationContext();
+        getPrewarmExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                prewarm(appContext, resourceIds, sizePx);
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getPrewarmExecutor() {
+        if (sPrewarmExecutor == null) {
+            sPrewarmExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "WeatherIconCache");
+                }
+            });
+        }
+        return sPrewarmExecutor;
+    }
+
+    private static Bitmap decodeIcon(Context context, int resourceId, int sizePx) {
+        Drawable drawable = ContextCompat.getDrawable(context, resourceId);
+        if (drawable == null) {
+            return null;
+        }
+
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        if (width <= 0 || height <= 0) {
+            if (sizePx <= 0) {
+                return null;
+            }
+            width = sizePx;
+            height = sizePx;
+        }
+
+        /* Scale the icon to fit into the requested size, keeping its aspect ratio */
+        if (sizePx > 0) {
+            float scale = Math.min((float) sizePx / width, (float) sizePx / height);
+            width = Math.max(1, Math.round(width * scale));
+            height = Math.max(1, Math.round(height * scale));
+        }
+
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                return bitmap;
+            }
+        }
+
+        Bitmap icon = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(icon);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        return icon;
+    }
+}
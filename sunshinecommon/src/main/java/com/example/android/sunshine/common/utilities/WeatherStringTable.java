@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common.utilities;
+
+import android.content.Context;
+
+import com.example.android.sunshine.common.R;
+import com.example.android.sunshine.common.data.SunshinePreferences;
+
+import java.util.Locale;
+
+/**
+ * Keeps the temperatures and winds Sunshine shows as formatted strings. Temperatures and wind
+ * speeds are shown without decimals, so the forecast list, the notification and the watch keep
+ * showing the same few dozen strings, and each of them is formatted only once.
+ * <p>
+ * A table holds the strings of one locale and one choice of units. Once either changes, the next
+ * call builds a new, empty table. The strings are formatted when they're first needed, values
+ * outside of the range of the table are formatted every time. Any number of threads may use a
+ * table: two threads that format the same string at the same time just both store it.
+ */
+final class WeatherStringTable {
+
+    /* The temperatures the table holds, in degrees Celsius. Earth's records are within. */
+    private static final int MIN_CELSIUS = -90;
+    private static final int MAX_CELSIUS = 60;
+
+    /* The wind speeds the table holds, in km/h or mph */
+    private static final int MAX_WIND_SPEED = 200;
+
+    /* The compass directions, clockwise from north in steps of 45 degrees */
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    private static volatile WeatherStringTable sTable;
+
+    private final Locale mLocale;
+    private final boolean mMetric;
+
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+
+    /* The lowest temperature of mTemperatures, in the units the user prefers */
+    private final int mMinTemperature;
+    private final String[] mTemperatures;
+
+    /* Indexed by wind speed times the number of directions plus the direction */
+    private final String[] mWinds;
+
+    private WeatherStringTable(Context context, Locale locale, boolean metric) {
+        mLocale = locale;
+        mMetric = metric;
+
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        mWindFormat = context.getString(metric ? R.string.format_wind_kmh : R.string.format_wind_mph);
+
+        if (metric) {
+            mMinTemperature = MIN_CELSIUS;
+            mTemperatures = new String[MAX_CELSIUS - MIN_CELSIUS + 1];
+        } else {
+            mMinTemperature = (int) Math.floor(SunshineWeatherUtils.celsiusToFahrenheit(MIN_CELSIUS));
+            int maxTemperature = (int) Math.ceil(SunshineWeatherUtils.celsiusToFahrenheit(MAX_CELSIUS));
+            mTemperatures = new String[maxTemperature - mMinTemperature + 1];
+        }
+
+        mWinds = new String[(MAX_WIND_SPEED + 1) * DIRECTIONS.length];
+    }
+
+    /**
+     * Returns the table of the current locale and the units the user prefers.
+     *
+     * @param context Used to access the preferences and the formats
+     * @return The table
+     */
+    static WeatherStringTable get(Context context) {
+        boolean metric = SunshinePreferences.isMetric(context);
+        Locale locale = Locale.getDefault();
+
+        WeatherStringTable table = sTable;
+        if (table == null || table.mMetric != metric || !table.mLocale.equals(locale)) {
+            table = new WeatherStringTable(context, locale, metric);
+            sTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @return The temperature in the units the user prefers, in the form "21°"
+     */
+    String formatTemperature(double temperature) {
+        if (!mMetric) {
+            temperature = SunshineWeatherUtils.celsiusToFahrenheit(temperature);
+        }
+
+        double rounded = roundHalfUp(temperature);
+        int index = (int) rounded - mMinTemperature;
+
+        /* Slightly below zero is shown as "-0°", that one isn't worth a slot */
+        boolean negativeZero = rounded == 0 && temperature < 0;
+        if (negativeZero || index < 0 || index >= mTemperatures.length) {
+            return String.format(mTemperatureFormat, temperature);
+        }
+
+        String formatted = mTemperatures[index];
+        if (formatted == null) {
+            formatted = String.format(mTemperatureFormat, rounded);
+            mTemperatures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param windSpeed Wind speed in kilometers / hour
+     * @param degrees   Degrees as measured on a compass
+     * @return The wind in the units the user prefers, in the form "2 km/h SW"
+     */
+    String formatWind(float windSpeed, float degrees) {
+        if (!mMetric) {
+            windSpeed = KMH_TO_MPH * windSpeed;
+        }
+
+        int direction = getDirection(degrees);
+        double rounded = roundHalfUp(windSpeed);
+        if (direction < 0 || windSpeed < 0 || rounded > MAX_WIND_SPEED) {
+            return String.format(mWindFormat, windSpeed,
+                    direction < 0 ? UNKNOWN_DIRECTION : DIRECTIONS[direction]);
+        }
+
+        int index = (int) rounded * DIRECTIONS.length + direction;
+        String formatted = mWinds[index];
+        if (formatted == null) {
+            formatted = String.format(mWindFormat, rounded, DIRECTIONS[direction]);
+            mWinds[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param degrees Degrees as measured on a compass
+     * @return The index of the compass direction in DIRECTIONS, -1 if there is none
+     */
+    static int getDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            /* Also anything beyond the circle, as it always has been */
+            return 0;
+        }
+        if (Float.isNaN(degrees)) {
+            return -1;
+        }
+        return (int) ((degrees + 22.5) / 45);
+    }
+
+    /**
+     * Rounds half away from zero, like the "%1.0f" of the formats does. Unlike
+     * {@link Math#round(double)}, which rounds -0.5 to 0 rather than -1.
+     */
+    private static double roundHalfUp(double value) {
+        double magnitude = Math.abs(value);
+        double floor = Math.floor(magnitude);
+        double rounded = magnitude - floor >= 0.5 ? floor + 1 : floor;
+        return value < 0 ? -rounded : rounded;
+    }
+}
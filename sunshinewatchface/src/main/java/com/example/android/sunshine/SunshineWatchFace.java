@@ -22,15 +22,17 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.Process;
+import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
@@ -38,18 +40,31 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.example.android.sunshine.common.data.WeatherContract;
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
+import com.example.android.sunshine.common.utilities.SunshineDateUtils;
 import com.example.android.sunshine.common.utilities.LogHelper;
 import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
+import java.text.DecimalFormatSymbols;
 import java.util.Calendar;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -75,10 +90,33 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
     private static final int MSG_UPDATE_TIME = 0;
 
     /**
-     * Handler message id for update the weather periodically in interactive mode.
+     * The phone pushes every new forecast, the watch only asks for one itself if the stored
+     * forecast is about to run out of days or was synced longer ago than
+     * R.integer.max_forecast_age_minutes. The watch face checks once a minute.
      */
-    private static final int MSG_UPDATE_WEATHER = 1;
+    private static final int MIN_FORECAST_DAYS_LEFT = 2;
 
+    /**
+     * How often the watch asks the phone at most, if the phone has nothing newer to send.
+     */
+    private static final long WEATHER_REQUEST_INTERVAL_MS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * Reads the Data Layer and stores what it holds, which decodes the forecast and writes its
+     * file, away from the thread that draws the face.
+     */
+    private static final ExecutorService sDataExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "SunshineWatchFaceData");
+        }
+    });
 
     @Override
     public Engine onCreateEngine() {
@@ -100,10 +138,6 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     case MSG_UPDATE_TIME:
                         engine.handleUpdateTimeMessage();
                         break;
-                    case MSG_UPDATE_WEATHER:
-                        Log.d(TAG, "Handling update weather message.");
-                        engine.handleUpdateWeatherMessage();
-                        break;
                 }
             }
         }
@@ -130,10 +164,24 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                invalidateTimeText();
                 invalidate();
             }
         };
 
+        /*
+         * The time as "HH:MM:SS" and the date, formatted into reusable buffers so drawing a frame
+         * doesn't allocate. Ambient mode draws the first five characters of the time. The time
+         * is only rewritten when the second changes, the date when the day changes.
+         */
+        final char[] timeChars = new char[8];
+        long timeCharsSecond = -1;
+        char timeZeroDigit = '0';
+
+        char[] dateChars = new char[0];
+        int dateLength;
+        int dateCharsDay = -1;
+
         Paint minTempPaint;
         String textMinTemp;
 
@@ -145,24 +193,48 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         Paint weatherPaint;
         Bitmap weatherBitmap;
 
-        boolean registeredWeatherUpdateReceiver = false;
-        final BroadcastReceiver weatherUpdateReceiver = new BroadcastReceiver() {
+        boolean registeredWeatherListener = false;
+        final WeatherStore.Listener weatherListener = new WeatherStore.Listener() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                Log.d(TAG, "Received weather update broadcast.");
-
-                final float minTemperature = intent.getFloatExtra(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 0.0f);
-                final float maxTemperature = intent.getFloatExtra(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 0.0f);
-                final int weatherId = intent.getIntExtra(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 0);
-
-                textMinTemp = SunshineWeatherUtils.formatTemperature(getApplicationContext(), minTemperature);
-                textMaxTemp = SunshineWeatherUtils.formatTemperature(getApplicationContext(), maxTemperature);
-                weatherBitmap = BitmapFactory.decodeResource(getResources(), SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+            public void onForecastChanged() {
+                Log.d(TAG, "Forecast changed.");
 
+                // a new forecast may have different weather for the day that is shown
+                shownWeatherDate = -1;
+                updateShownWeather();
                 invalidate();
             }
         };
 
+        /* The weather condition whose icon is shown, or is being loaded to be shown */
+        int shownWeatherId = -1;
+        final WeatherIconLoader.Callback weatherIconCallback = new WeatherIconLoader.Callback() {
+            @Override
+            public void onIconLoaded(int weatherId, Bitmap icon) {
+                if (weatherId == shownWeatherId && icon != weatherBitmap) {
+                    weatherBitmap = icon;
+                    invalidateStaticLayers();
+                    invalidate();
+                }
+            }
+        };
+
+        /* The date of the forecast day that is currently shown, -1 if none is */
+        long shownWeatherDate = -1;
+
+        /* Bounds of textMaxTemp, measured whenever it changes */
+        final Rect maxTempBounds = new Rect();
+
+        /*
+         * The background, date, weather and temperatures of each mode, drawn offscreen whenever
+         * one of them changes. A frame only draws the layer of its mode and the time on top.
+         */
+        final Canvas layerCanvas = new Canvas();
+        Bitmap interactiveLayer;
+        boolean interactiveLayerValid;
+        Bitmap ambientLayer;
+        boolean ambientLayerValid;
+
         boolean isRound = false;
 
         /**
@@ -174,6 +246,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         GoogleApiClient googleApiClient;
 
+        /* When the watch face last asked the phone for the forecast */
+        long lastWeatherRequestMillis;
+
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -221,13 +296,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             weatherPaint = new Paint();
 
             mCalendar = Calendar.getInstance();
+
+            // show the last known weather on the first frame, the phone may not even be around
+            updateShownWeather();
         }
 
         @Override
         public void onDestroy() {
             updateWatchfaceHandler.removeMessages(MSG_UPDATE_TIME);
-            updateWatchfaceHandler.removeMessages(MSG_UPDATE_WEATHER);
             releaseGoogleApiClient();
+            releaseStaticLayers();
             super.onDestroy();
         }
 
@@ -265,6 +343,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                invalidateTimeText();
                 invalidate();
                 connectGoogleApiClient();
             } else {
@@ -284,12 +363,14 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 SunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
             }
 
-            if (!registeredWeatherUpdateReceiver) {
-                registeredWeatherUpdateReceiver = true;
-                IntentFilter filter = new IntentFilter("com.example.android.sunshine.WEATHER_UPDATE");
-                SunshineWatchFace.this.registerReceiver(weatherUpdateReceiver, filter);
+            if (!registeredWeatherListener) {
+                registeredWeatherListener = true;
+                WeatherStore.addListener(weatherListener);
             }
 
+            // a forecast may have arrived while we weren't listening
+            updateShownWeather();
+
         }
 
         private void unregisterReceiver() {
@@ -298,9 +379,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 SunshineWatchFace.this.unregisterReceiver(mTimeZoneReceiver);
             }
 
-            if (registeredWeatherUpdateReceiver) {
-                registeredWeatherUpdateReceiver = false;
-                SunshineWatchFace.this.unregisterReceiver(weatherUpdateReceiver);
+            if (registeredWeatherListener) {
+                registeredWeatherListener = false;
+                WeatherStore.removeListener(weatherListener);
             }
         }
 
@@ -315,6 +396,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            invalidateStaticLayers();
 
             // do not use bold typefaces with burnIn-Protection enabled
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
@@ -327,6 +409,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onTimeTick() {
             super.onTimeTick();
             invalidate();
+            checkWeatherIfConnected();
         }
 
         @Override
@@ -382,37 +465,159 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             invalidate();
         }
 
-        @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height() / 2, backgroundUpper);
-                canvas.drawRect(0, bounds.height() / 2, bounds.width(), bounds.height(), backgroundLower);
+        /**
+         * Picks today's weather out of the forecast in the {@link WeatherStore}. The forecast
+         * holds several days, so after midnight the watchface moves on to the next day without
+         * having to ask the phone.
+         */
+        private void updateShownWeather() {
+            ForecastBatch forecast = WeatherStore.getForecast(getApplicationContext());
+            if (forecast == null) {
+                return;
             }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+            int today = forecast.findFirstDayFrom(SunshineDateUtils.getNormalizedUtcDateForToday());
+            if (today == -1) {
+                // the forecast is over, keep showing its last day until the phone sends a new one
+                today = forecast.size() - 1;
+            }
+            if (today == -1 || forecast.getDate(today) == shownWeatherDate) {
+                return;
+            }
+
+            shownWeatherDate = forecast.getDate(today);
+            textMinTemp = SunshineWeatherUtils.formatTemperature(getApplicationContext(), forecast.getMinTemp(today));
+            textMaxTemp = SunshineWeatherUtils.formatTemperature(getApplicationContext(), forecast.getMaxTemp(today));
+            maxTempPaint.getTextBounds(textMaxTemp, 0, textMaxTemp.length(), maxTempBounds);
+            invalidateStaticLayers();
+
+            // the icon is decoded in the background, until then the previous one stays
+            shownWeatherId = forecast.getWeatherId(today);
+            WeatherIconLoader.loadIcon(getApplicationContext(), shownWeatherId, weatherIconCallback);
+        }
+
+        /**
+         * Forgets the formatted time and date, for when the time zone or the locale changed.
+         */
+        private void invalidateTimeText() {
+            timeCharsSecond = -1;
+            dateCharsDay = -1;
+        }
+
+        /**
+         * Brings {@link #timeChars} and {@link #dateChars} up to date with {@link #mCalendar}.
+         * Doesn't allocate anything unless the day changed.
+         */
+        private void updateTimeText(long now) {
+            int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+            if (day != dateCharsDay) {
+                dateCharsDay = day;
+
+                Locale locale = Locale.getDefault();
+                String dateText = String.format(locale, "%ta, %tb %td %tY", mCalendar, mCalendar, mCalendar, mCalendar);
+                if (dateText.length() > dateChars.length) {
+                    dateChars = new char[dateText.length()];
+                }
+                dateText.getChars(0, dateText.length(), dateChars, 0);
+                dateLength = dateText.length();
+                invalidateStaticLayers();
+
+                // a new day may be the next day of the forecast
+                updateShownWeather();
+
+                // String.format writes the digits of the locale, so does the time
+                timeZeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+                timeCharsSecond = -1;
+            }
+
+            long second = now / 1000;
+            if (second != timeCharsSecond) {
+                timeCharsSecond = second;
+                putTwoDigits(timeChars, 0, mCalendar.get(Calendar.HOUR_OF_DAY));
+                timeChars[2] = ':';
+                putTwoDigits(timeChars, 3, mCalendar.get(Calendar.MINUTE));
+                timeChars[5] = ':';
+                putTwoDigits(timeChars, 6, mCalendar.get(Calendar.SECOND));
+            }
+        }
+
+        private void putTwoDigits(char[] chars, int offset, int value) {
+            chars[offset] = (char) (timeZeroDigit + value / 10);
+            chars[offset + 1] = (char) (timeZeroDigit + value % 10);
+        }
+
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
 
-            String timeText = mAmbient
-                    ? String.format(Locale.getDefault(), "%tR", mCalendar)
-                    : String.format(Locale.getDefault(), "%tT", mCalendar);
+            updateTimeText(now);
+
+            // Everything but the time only changes every now and then, it is drawn from a layer.
+            canvas.drawBitmap(getStaticLayer(bounds.width(), bounds.height()), 0, 0, null);
+
+            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+            canvas.drawText(timeChars, 0, mAmbient ? 5 : 8, (bounds.width() / 2), timeYOffset, timePaint);
+        }
 
-            canvas.drawText(timeText, (bounds.width() / 2), timeYOffset, timePaint);
+        /**
+         * Marks the layers of both modes as out of date, for when anything but the time that is
+         * shown on the watch face changed. They are drawn again the next time they are shown.
+         */
+        private void invalidateStaticLayers() {
+            interactiveLayerValid = false;
+            ambientLayerValid = false;
+        }
 
-            String dateText = mAmbient
-                    ? String.format(Locale.getDefault(), "%ta, %tb %td %tY", mCalendar, mCalendar, mCalendar, mCalendar)
-                    : String.format(Locale.getDefault(), "%ta, %tb %td %tY", mCalendar, mCalendar, mCalendar, mCalendar);
+        /**
+         * Returns the layer of the current mode, drawing it first if it is out of date. Each mode
+         * has its own layer, so switching between them only draws a layer when its content
+         * changed while the other mode was showing.
+         */
+        private Bitmap getStaticLayer(int width, int height) {
+            Bitmap layer = mAmbient ? ambientLayer : interactiveLayer;
+            boolean valid = mAmbient ? ambientLayerValid : interactiveLayerValid;
 
-            canvas.drawText(dateText, (bounds.width() / 2), dateYOffset, datePaint);
+            if (layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+                if (layer != null) {
+                    layer.recycle();
+                }
+                layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                valid = false;
+            }
+
+            if (!valid) {
+                layerCanvas.setBitmap(layer);
+                drawStaticLayer(layerCanvas, width, height);
+                layerCanvas.setBitmap(null);
+            }
+
+            if (mAmbient) {
+                ambientLayer = layer;
+                ambientLayerValid = true;
+            } else {
+                interactiveLayer = layer;
+                interactiveLayerValid = true;
+            }
+            return layer;
+        }
+
+        private void drawStaticLayer(Canvas canvas, int width, int height) {
+            // Draw the background.
+            if (mAmbient) {
+                canvas.drawColor(Color.BLACK);
+            } else {
+                canvas.drawRect(0, 0, width, height / 2, backgroundUpper);
+                canvas.drawRect(0, height / 2, width, height, backgroundLower);
+            }
+
+            canvas.drawText(dateChars, 0, dateLength, (width / 2), dateYOffset, datePaint);
 
             if (weatherBitmap != null && !mAmbient) {
                 canvas.drawBitmap(
                         weatherBitmap,
-                        (bounds.width() / 2) - (weatherBitmap.getScaledWidth(canvas) + 5),
-                        (bounds.height() / 2) + 20,
+                        (width / 2) - (weatherBitmap.getScaledWidth(canvas) + 5),
+                        (height / 2) + 20,
                         weatherPaint);
             }
 
@@ -420,15 +625,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 float temperatureOffsetY;
                 float temperatureOffsetX;
 
-                Rect maxTempBounds = new Rect();
-                maxTempPaint.getTextBounds(textMaxTemp, 0, textMaxTemp.length(), maxTempBounds);
-
                 if (mAmbient) {
-                    temperatureOffsetY = (bounds.height() / 2) + maxTempBounds.height() + 35;
-                    temperatureOffsetX = (bounds.width() / 2) - maxTempBounds.width() - 2.5f;
+                    temperatureOffsetY = (height / 2) + maxTempBounds.height() + 35;
+                    temperatureOffsetX = (width / 2) - maxTempBounds.width() - 2.5f;
                 } else {
-                    temperatureOffsetY = (bounds.height() / 2) + maxTempBounds.height() + 35;
-                    temperatureOffsetX = (bounds.width() / 2) + 10;
+                    temperatureOffsetY = (height / 2) + maxTempBounds.height() + 35;
+                    temperatureOffsetX = (width / 2) + 10;
                 }
 
                 canvas.drawText(textMaxTemp, temperatureOffsetX, temperatureOffsetY, maxTempPaint);
@@ -436,16 +638,26 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
         }
 
+        private void releaseStaticLayers() {
+            if (interactiveLayer != null) {
+                interactiveLayer.recycle();
+                interactiveLayer = null;
+            }
+            if (ambientLayer != null) {
+                ambientLayer.recycle();
+                ambientLayer = null;
+            }
+            invalidateStaticLayers();
+        }
+
         /**
          * Starts the {@link #updateWatchfaceHandler} timer if it should be running and isn't currently
          * or stops it if it shouldn't be running but currently is.
          */
         private void updateTimer() {
             updateWatchfaceHandler.removeMessages(MSG_UPDATE_TIME);
-            updateWatchfaceHandler.removeMessages(MSG_UPDATE_WEATHER);
             if (shouldTimerBeRunning()) {
                 updateWatchfaceHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-                updateWatchfaceHandler.sendEmptyMessage(MSG_UPDATE_WEATHER);
             }
         }
 
@@ -464,6 +676,10 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             invalidate();
             if (shouldTimerBeRunning()) {
                 long timeMs = System.currentTimeMillis();
+                // onTimeTick only comes in ambient mode, check the weather once a minute here
+                if (timeMs % TimeUnit.MINUTES.toMillis(1) < INTERACTIVE_UPDATE_RATE_MS) {
+                    checkWeatherIfConnected();
+                }
                 long delayMs = INTERACTIVE_UPDATE_RATE_MS
                         - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
                 updateWatchfaceHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
@@ -471,29 +687,53 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the weather periodically in interactive mode.
-         * Although it might be very unlikely that the watchface stays in interactive mode
-         * for 1 hour we still register the update-timer. Once it's put in ambient
-         * mode the update messages will be removed anyways.
+         * Called once a minute. A face that stays visible never reconnects to the Data Layer, so
+         * this is where it notices that its forecast went stale, and where a request that found
+         * no phone is retried.
          */
-        private void handleUpdateWeatherMessage() {
-            issueWeatherUpdate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                // update once every hour
-                long updateRate = INTERACTIVE_UPDATE_RATE_MS * 3600;
+        private void checkWeatherIfConnected() {
+            if (googleApiClient != null && googleApiClient.isConnected()) {
+                issueWeatherUpdateIfStale();
+            }
+        }
+
+        /**
+         * Asks the phone for the forecast, but only if the stored one is stale. Normally the
+         * phone pushes every new forecast by itself, this is the fallback for when a push was
+         * missed, for example because the phone was out of reach.
+         */
+        private void issueWeatherUpdateIfStale() {
+            Context context = getApplicationContext();
+            if (WeatherStore.getForecastAge(context) < ForecastCodec.getMaxForecastAgeMillis(context)
+                    && WeatherStore.getDaysLeft(context) >= MIN_FORECAST_DAYS_LEFT) {
+                return;
+            }
 
-                long delayMs = updateRate - (timeMs % updateRate);
-                updateWatchfaceHandler.sendEmptyMessageDelayed(MSG_UPDATE_WEATHER, delayMs);
+            long now = System.currentTimeMillis();
+            if (now - lastWeatherRequestMillis < WEATHER_REQUEST_INTERVAL_MS) {
+                return;
             }
+            lastWeatherRequestMillis = now;
+
+            Log.d(TAG, "Stored forecast is stale, asking for a weather-update.");
+            issueWeatherUpdate();
         }
 
         private void issueWeatherUpdate() {
             if (googleApiClient != null) {
-                PutDataMapRequest map = PutDataMapRequest.create("/weather-update");
-                map.getDataMap().putLong("seed", System.currentTimeMillis());
-                map.setUrgent();
-                Wearable.DataApi.putDataItem(googleApiClient, map.asPutDataRequest());
+                /*
+                 * Ask with a message rather than a DataItem. A DataItem only reaches the phone if
+                 * its content changed, which would need a fresh seed every time and leave a
+                 * needless item behind on both devices.
+                 */
+                Wearable.NodeApi.getConnectedNodes(googleApiClient).setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+                    @Override
+                    public void onResult(@NonNull NodeApi.GetConnectedNodesResult result) {
+                        for (Node node : result.getNodes()) {
+                            Wearable.MessageApi.sendMessage(googleApiClient, node.getId(), ForecastCodec.PATH_FORECAST_REQUEST, null);
+                        }
+                    }
+                });
             } else {
                 Log.e(TAG, "Could not issue weather-update because Google-Api Client is not present");
             }
@@ -502,6 +742,57 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         @Override
         public void onConnected(Bundle bundle) {
             Log.d(TAG, "Watchface connected to Google-Api.");
+            readForecastDataItems();
+        }
+
+        /**
+         * Reads the forecast the Data Layer currently holds. A forecast that changed while the
+         * watch face wasn't running is picked up right away, instead of only with the next change
+         * the phone makes. Asks the phone afterwards if the forecast is stale even so.
+         * <p>
+         * The forecast is read and stored on a background thread. The store's listener redraws
+         * the face if the forecast changed.
+         */
+        private void readForecastDataItems() {
+            final GoogleApiClient apiClient = googleApiClient;
+            final Context context = getApplicationContext();
+            final Uri forecastUri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(ForecastCodec.PATH_FORECAST)
+                    .build();
+
+            sDataExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    DataItemBuffer dataItems = Wearable.DataApi.getDataItems(apiClient, forecastUri).await();
+                    try {
+                        if (!dataItems.getStatus().isSuccess()) {
+                            Log.w(TAG, "Could not read the forecast from the Data Layer: "
+                                    + dataItems.getStatus().getStatusMessage());
+                        }
+                        for (DataItem dataItem : dataItems) {
+                            DataMap data = DataMapItem.fromDataItem(dataItem).getDataMap();
+                            try {
+                                WeatherStore.setForecast(context,
+                                        data.getByteArray(ForecastCodec.KEY_FORECAST),
+                                        data.getLong(ForecastCodec.KEY_SYNCED_AT, WeatherStore.SYNC_TIME_UNKNOWN));
+                            } catch (IllegalArgumentException e) {
+                                Log.w(TAG, "Could not decode forecast.", e);
+                            }
+                        }
+                    } finally {
+                        dataItems.release();
+                    }
+
+                    // only ask the phone if the Data Layer didn't have anything recent either
+                    updateWatchfaceHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            checkWeatherIfConnected();
+                        }
+                    });
+                }
+            });
         }
 
         @Override
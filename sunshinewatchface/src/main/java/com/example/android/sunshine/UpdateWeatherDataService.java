@@ -1,8 +1,9 @@
 package com.example.android.sunshine;
 
-import android.content.Intent;
 import android.util.Log;
 
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
 import com.example.android.sunshine.common.data.WeatherContract;
 import com.example.android.sunshine.common.utilities.LogHelper;
 import com.google.android.gms.common.data.FreezableUtils;
@@ -29,21 +30,32 @@ public class UpdateWeatherDataService extends WearableListenerService {
         final List<DataEvent> events = FreezableUtils.freezeIterable(dataEventBuffer);
 
         for (DataEvent event : events) {
-            if (event.getDataItem().getUri().getEncodedPath().equals("/weather")) {
+            String path = event.getDataItem().getUri().getEncodedPath();
+
+            if (path.equals(ForecastCodec.PATH_FORECAST)) {
                 Log.d(TAG, "Handling event: " + event.getDataItem().getUri());
                 DataMap data = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
 
-                final long weatherDate = data.getLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                final float weatherMinTemp = data.getFloat(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
-                final float weatherMaxTemp = data.getFloat(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
-                final int weatherId = data.getInt(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+                // decode the whole forecast once, the watchface picks its days from the store
+                publishForecast(data.getByteArray(ForecastCodec.KEY_FORECAST),
+                        data.getLong(ForecastCodec.KEY_SYNCED_AT, WeatherStore.SYNC_TIME_UNKNOWN));
+
+                continue;
+            }
 
-                Intent broadcastIntent = new Intent("com.example.android.sunshine.WEATHER_UPDATE");
-                broadcastIntent.putExtra(WeatherContract.WeatherEntry.COLUMN_DATE, weatherDate);
-                broadcastIntent.putExtra(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, weatherMinTemp);
-                broadcastIntent.putExtra(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, weatherMaxTemp);
-                broadcastIntent.putExtra(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-                sendBroadcast(broadcastIntent);
+            if (path.equals("/weather")) {
+                // single day sent by phones that don't send the whole forecast yet
+                Log.d(TAG, "Handling event: " + event.getDataItem().getUri());
+                DataMap data = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+
+                ForecastBatch forecast = new ForecastBatch(1);
+                forecast.addDay(
+                        data.getLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                        data.getInt(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                        data.getFloat(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                        data.getFloat(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                        0, 0, 0, 0);
+                publishForecast(ForecastCodec.encode(forecast, 0), WeatherStore.SYNC_TIME_UNKNOWN);
 
                 continue;
             }
@@ -51,4 +63,16 @@ public class UpdateWeatherDataService extends WearableListenerService {
             Log.w(TAG, "Unhandled event URI: " + event.getDataItem().getUri());
         }
     }
+
+    private void publishForecast(byte[] encodedForecast, long syncedAtMillis) {
+        // the store tells the watch face if the forecast changed
+        try {
+            if (WeatherStore.setForecast(this, encodedForecast, syncedAtMillis)) {
+                // this runs in the background, have the icons of the new days ready for the face
+                WeatherIconLoader.prewarm(this, WeatherStore.getForecast(this));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Could not decode forecast.", e);
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.common.utilities.WeatherIconCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes the weather icons of the watch face on a background thread, so a new forecast never
+ * decodes a bitmap on the thread that draws the face. The icons are kept in the
+ * {@link WeatherIconCache}, weather conditions that share an icon share the decoded bitmap.
+ */
+final class WeatherIconLoader {
+
+    /**
+     * Receives an icon that has been loaded.
+     */
+    interface Callback {
+        /**
+         * Called on the main thread.
+         *
+         * @param weatherId The weather condition the icon was asked for
+         * @param icon      The icon, or null if it couldn't be decoded
+         */
+        void onIconLoaded(int weatherId, Bitmap icon);
+    }
+
+    /* The watch face draws the icons at their intrinsic size */
+    private static final int ICON_SIZE = 0;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "WeatherIconLoader");
+        }
+    });
+
+    private WeatherIconLoader() {
+    }
+
+    /**
+     * @return The icon of a weather condition if it has been decoded already, null otherwise
+     */
+    static Bitmap getLoadedIcon(int weatherId) {
+        int resourceId = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+        return WeatherIconCache.getCachedIcon(resourceId, ICON_SIZE);
+    }
+
+    /**
+     * Loads the icon of a weather condition. If it has been decoded already, the callback is
+     * called right away, otherwise once the icon has been decoded in the background.
+     *
+     * @param context   Used to decode the icon
+     * @param weatherId The weather condition
+     * @param callback  Receives the icon
+     */
+    static void loadIcon(final Context context, final int weatherId, final Callback callback) {
+        Bitmap icon = getLoadedIcon(weatherId);
+        if (icon != null) {
+            callback.onIconLoaded(weatherId, icon);
+            return;
+        }
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int resourceId = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+                final Bitmap decodedIcon = WeatherIconCache.getIcon(context, resourceId, ICON_SIZE);
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onIconLoaded(weatherId, decodedIcon);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Decodes the icons of every day of a forecast that aren't cached yet, so they are ready
+     * once the watch face moves on to those days. Don't call this on the main thread.
+     */
+    static void prewarm(Context context, ForecastBatch forecast) {
+        int[] resourceIds = new int[forecast.size()];
+        for (int day = 0; day < forecast.size(); day++) {
+            resourceIds[day] = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(forecast.getWeatherId(day));
+        }
+        WeatherIconCache.prewarm(context, resourceIds, ICON_SIZE);
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.common.data.ForecastBatch;
+import com.example.android.sunshine.common.data.ForecastCodec;
+import com.example.android.sunshine.common.utilities.LogHelper;
+import com.example.android.sunshine.common.utilities.SunshineDateUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the latest forecast the phone sent to the watch. {@link UpdateWeatherDataService}
+ * decodes the forecast once when it arrives and stores it here, the watch face picks today's
+ * weather from it whenever it needs to, including after midnight, without asking the phone.
+ * <p>
+ * The forecast is also kept in a file, encoded just like the phone sent it and preceded by the
+ * time the phone synced it, so a watch face that starts up shows the last known weather on its
+ * first frame, even if the phone isn't around.
+ * The file is only about a hundred bytes, reading it the first time the store is used is cheap
+ * enough to do right away.
+ * <p>
+ * Whoever shows the weather registers a {@link Listener}. The store calls it on the main thread
+ * right after the forecast changed, from within the process, without a system broadcast.
+ */
+public final class WeatherStore {
+
+    private static final String TAG = LogHelper.LOG_TAG(WeatherStore.class);
+
+    private static final String FORECAST_FILE_NAME = "forecast.bin";
+
+    /** Sync time of a forecast from a phone that doesn't send one */
+    public static final long SYNC_TIME_UNKNOWN = -1;
+
+    /**
+     * Gets told when the stored forecast changed.
+     */
+    public interface Listener {
+        /**
+         * Called on the main thread after a new forecast has been stored. Get it with
+         * {@link #getForecast(Context)}.
+         */
+        void onForecastChanged();
+    }
+
+    private static final List<Listener> sListeners = new CopyOnWriteArrayList<>();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Runnable sNotifyListeners = new Runnable() {
+        @Override
+        public void run() {
+            for (Listener listener : sListeners) {
+                listener.onForecastChanged();
+            }
+        }
+    };
+
+    private static boolean sLoaded;
+    private static byte[] sEncodedForecast;
+    private static ForecastBatch sForecast;
+    /* When the phone synced the stored forecast, as far as the watch knows */
+    private static long sSyncedAtMillis;
+
+    private WeatherStore() {
+    }
+
+    /**
+     * Stores a forecast that arrived from the phone. If it is the one that is stored already,
+     * only its sync time is updated, which keeps a forecast that didn't change from going stale.
+     *
+     * @param context         Used to get to the file of the store
+     * @param encodedForecast The forecast as encoded by {@link ForecastCodec}
+     * @param syncedAtMillis  When the phone synced the forecast, or SYNC_TIME_UNKNOWN if the
+     *                        phone didn't say, which counts a new forecast as synced right now
+     * @return Whether the stored forecast changed
+     * @throws IllegalArgumentException If the bytes aren't a forecast
+     */
+    public static synchronized boolean setForecast(Context context, byte[] encodedForecast,
+                                                   long syncedAtMillis) {
+        load(context);
+        if (Arrays.equals(encodedForecast, sEncodedForecast)) {
+            if (syncedAtMillis > sSyncedAtMillis) {
+                sSyncedAtMillis = syncedAtMillis;
+                save(context, encodedForecast, syncedAtMillis);
+            }
+            return false;
+        }
+
+        ForecastBatch forecast = ForecastCodec.decode(encodedForecast);
+        sEncodedForecast = encodedForecast;
+        sForecast = forecast;
+        sSyncedAtMillis = syncedAtMillis == SYNC_TIME_UNKNOWN
+                ? System.currentTimeMillis()
+                : syncedAtMillis;
+        save(context, encodedForecast, sSyncedAtMillis);
+
+        // a burst of forecasts only notifies once
+        sMainHandler.removeCallbacks(sNotifyListeners);
+        sMainHandler.post(sNotifyListeners);
+        return true;
+    }
+
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * @return The stored forecast, or null if the phone never sent one
+     */
+    public static synchronized ForecastBatch getForecast(Context context) {
+        load(context);
+        return sForecast;
+    }
+
+    /**
+     * @return How long ago the phone synced the stored forecast in milliseconds, or
+     * Long.MAX_VALUE if the phone never sent one
+     */
+    public static synchronized long getForecastAge(Context context) {
+        load(context);
+        if (sForecast == null) {
+            return Long.MAX_VALUE;
+        }
+        // a clock that has been set back makes the forecast new, not older than it is
+        return Math.max(0, System.currentTimeMillis() - sSyncedAtMillis);
+    }
+
+    /**
+     * Returns how many days of the stored forecast are left, starting with today.
+     */
+    public static synchronized int getDaysLeft(Context context) {
+        load(context);
+        if (sForecast == null) {
+            return 0;
+        }
+        int today = sForecast.findFirstDayFrom(SunshineDateUtils.getNormalizedUtcDateForToday());
+        return today == -1 ? 0 : sForecast.size() - today;
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FORECAST_FILE_NAME));
+    }
+
+    private static void load(Context context) {
+        if (sLoaded) {
+            return;
+        }
+        sLoaded = true;
+
+        try {
+            byte[] stored = getFile(context).readFully();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored));
+            long syncedAtMillis = in.readLong();
+            byte[] encodedForecast = new byte[in.available()];
+            in.readFully(encodedForecast);
+
+            sForecast = ForecastCodec.decode(encodedForecast);
+            sEncodedForecast = encodedForecast;
+            sSyncedAtMillis = syncedAtMillis;
+        } catch (FileNotFoundException e) {
+            Log.d(TAG, "No forecast stored yet.");
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not read the stored forecast.", e);
+        }
+    }
+
+    private static void save(Context context, byte[] encodedForecast, long syncedAtMillis) {
+        AtomicFile file = getFile(context);
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeLong(syncedAtMillis);
+            data.write(encodedForecast);
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not store the forecast.", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+}